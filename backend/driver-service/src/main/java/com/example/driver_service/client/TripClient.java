@@ -14,4 +14,8 @@ public interface TripClient {
 
     @PostMapping("/api/trips/{id}/accept")
     Object acceptTrip(@PathVariable("id") UUID tripId);
+
+    // Không tìm được tài xế: trip-service huỷ trip nếu vẫn đang SEARCHING_DRIVER
+    @PostMapping("/api/internal/trips/{id}/expire")
+    Object expireTrip(@PathVariable("id") UUID tripId);
 }
@@ -0,0 +1,188 @@
+package com.example.driver_service.config;
+
+import com.example.driver_service.entity.PendingTripNotification;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.UUID;
+
+/**
+ * Fixed-layout binary codec for {@link PendingTripNotification} values in Redis.
+ * <p>
+ * Layout (big-endian): version byte, 16-bit presence mask, then only the present fields in mask order.
+ * UUIDs are 16 bytes, coordinates are degrees * 1e7 as int, timestamps are epoch millis of the
+ * UTC-interpreted {@link LocalDateTime}, the fare is scale + unscaled bytes and the name is
+ * length-prefixed UTF-8.
+ * <p>
+ * Any value whose first byte is not {@code VERSION} was written by the previous JSON serializer (a
+ * {@code ["<class>", {...}]} wrapper with default typing, so it starts with {@code '['}) and is still read
+ * through {@code legacy}, so keys stored before the switch stay readable until they expire.
+ */
+public class PendingTripNotificationSerializer implements RedisSerializer<PendingTripNotification> {
+
+    private static final byte VERSION = 1;
+
+    private static final double COORDINATE_SCALE = 1e7;
+
+    private static final int TRIP_ID = 1;
+    private static final int PASSENGER_ID = 1 << 1;
+    private static final int PASSENGER_NAME = 1 << 2;
+    private static final int PICKUP_LATITUDE = 1 << 3;
+    private static final int PICKUP_LONGITUDE = 1 << 4;
+    private static final int DESTINATION_LATITUDE = 1 << 5;
+    private static final int DESTINATION_LONGITUDE = 1 << 6;
+    private static final int ESTIMATED_FARE = 1 << 7;
+    private static final int DISTANCE_KM = 1 << 8;
+    private static final int NOTIFIED_AT = 1 << 9;
+    private static final int EXPIRES_AT = 1 << 10;
+    private static final int ACCEPTED_BY = 1 << 11;
+    private static final int EXPIRED = 1 << 12;
+    private static final int ACCEPTED = 1 << 13;
+
+    private final RedisSerializer<Object> legacy;
+
+    public PendingTripNotificationSerializer(RedisSerializer<Object> legacy) {
+        this.legacy = legacy;
+    }
+
+    @Override
+    public byte[] serialize(PendingTripNotification value) throws SerializationException {
+        if (value == null) {
+            return null;
+        }
+
+        byte[] name = value.getPassengerName() != null
+                ? value.getPassengerName().getBytes(StandardCharsets.UTF_8) : null;
+        byte[] fare = value.getEstimatedFare() != null
+                ? value.getEstimatedFare().unscaledValue().toByteArray() : null;
+        if (name != null && name.length > 0xFFFF) {
+            throw new SerializationException("Passenger name too long: " + name.length + " bytes");
+        }
+        if (fare != null && fare.length > 0xFF) {
+            throw new SerializationException("Estimated fare too large: " + value.getEstimatedFare());
+        }
+
+        int mask = 0;
+        int size = 1 + 2;
+        if (value.getTripId() != null) { mask |= TRIP_ID; size += 16; }
+        if (value.getPassengerId() != null) { mask |= PASSENGER_ID; size += 16; }
+        if (name != null) { mask |= PASSENGER_NAME; size += 2 + name.length; }
+        if (value.getPickupLatitude() != null) { mask |= PICKUP_LATITUDE; size += 4; }
+        if (value.getPickupLongitude() != null) { mask |= PICKUP_LONGITUDE; size += 4; }
+        if (value.getDestinationLatitude() != null) { mask |= DESTINATION_LATITUDE; size += 4; }
+        if (value.getDestinationLongitude() != null) { mask |= DESTINATION_LONGITUDE; size += 4; }
+        if (fare != null) { mask |= ESTIMATED_FARE; size += 4 + 1 + fare.length; }
+        if (value.getDistanceKm() != null) { mask |= DISTANCE_KM; size += 8; }
+        if (value.getNotifiedAt() != null) { mask |= NOTIFIED_AT; size += 8; }
+        if (value.getExpiresAt() != null) { mask |= EXPIRES_AT; size += 8; }
+        if (value.getAcceptedByDriverId() != null) { mask |= ACCEPTED_BY; size += 16; }
+        if (value.isExpired()) { mask |= EXPIRED; }
+        if (value.isAccepted()) { mask |= ACCEPTED; }
+
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.put(VERSION);
+        buffer.putShort((short) mask);
+        if ((mask & TRIP_ID) != 0) putUuid(buffer, value.getTripId());
+        if ((mask & PASSENGER_ID) != 0) putUuid(buffer, value.getPassengerId());
+        if ((mask & PASSENGER_NAME) != 0) {
+            buffer.putShort((short) name.length);
+            buffer.put(name);
+        }
+        if ((mask & PICKUP_LATITUDE) != 0) putCoordinate(buffer, value.getPickupLatitude());
+        if ((mask & PICKUP_LONGITUDE) != 0) putCoordinate(buffer, value.getPickupLongitude());
+        if ((mask & DESTINATION_LATITUDE) != 0) putCoordinate(buffer, value.getDestinationLatitude());
+        if ((mask & DESTINATION_LONGITUDE) != 0) putCoordinate(buffer, value.getDestinationLongitude());
+        if ((mask & ESTIMATED_FARE) != 0) {
+            buffer.putInt(value.getEstimatedFare().scale());
+            buffer.put((byte) fare.length);
+            buffer.put(fare);
+        }
+        if ((mask & DISTANCE_KM) != 0) buffer.putDouble(value.getDistanceKm());
+        if ((mask & NOTIFIED_AT) != 0) buffer.putLong(toEpochMillis(value.getNotifiedAt()));
+        if ((mask & EXPIRES_AT) != 0) buffer.putLong(toEpochMillis(value.getExpiresAt()));
+        if ((mask & ACCEPTED_BY) != 0) putUuid(buffer, value.getAcceptedByDriverId());
+        return buffer.array();
+    }
+
+    @Override
+    public PendingTripNotification deserialize(byte[] bytes) throws SerializationException {
+        if (bytes == null || bytes.length == 0) {
+            return null;
+        }
+        if (bytes[0] != VERSION) {
+            // JSON from the previous serializer: '[' with default typing, '{' without
+            return (PendingTripNotification) legacy.deserialize(bytes);
+        }
+
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(bytes, 1, bytes.length - 1);
+            int mask = buffer.getShort() & 0xFFFF;
+
+            PendingTripNotification value = new PendingTripNotification();
+            if ((mask & TRIP_ID) != 0) value.setTripId(getUuid(buffer));
+            if ((mask & PASSENGER_ID) != 0) value.setPassengerId(getUuid(buffer));
+            if ((mask & PASSENGER_NAME) != 0) {
+                byte[] name = new byte[buffer.getShort() & 0xFFFF];
+                buffer.get(name);
+                value.setPassengerName(new String(name, StandardCharsets.UTF_8));
+            }
+            if ((mask & PICKUP_LATITUDE) != 0) value.setPickupLatitude(getCoordinate(buffer));
+            if ((mask & PICKUP_LONGITUDE) != 0) value.setPickupLongitude(getCoordinate(buffer));
+            if ((mask & DESTINATION_LATITUDE) != 0) value.setDestinationLatitude(getCoordinate(buffer));
+            if ((mask & DESTINATION_LONGITUDE) != 0) value.setDestinationLongitude(getCoordinate(buffer));
+            if ((mask & ESTIMATED_FARE) != 0) {
+                int scale = buffer.getInt();
+                byte[] unscaled = new byte[buffer.get() & 0xFF];
+                buffer.get(unscaled);
+                value.setEstimatedFare(new BigDecimal(new BigInteger(unscaled), scale));
+            }
+            if ((mask & DISTANCE_KM) != 0) value.setDistanceKm(buffer.getDouble());
+            if ((mask & NOTIFIED_AT) != 0) value.setNotifiedAt(fromEpochMillis(buffer.getLong()));
+            if ((mask & EXPIRES_AT) != 0) value.setExpiresAt(fromEpochMillis(buffer.getLong()));
+            if ((mask & ACCEPTED_BY) != 0) value.setAcceptedByDriverId(getUuid(buffer));
+            value.setExpired((mask & EXPIRED) != 0);
+            value.setAccepted((mask & ACCEPTED) != 0);
+            return value;
+        } catch (BufferUnderflowException e) {
+            throw new SerializationException("Truncated PendingTripNotification value", e);
+        }
+    }
+
+    @Override
+    public Class<?> getTargetType() {
+        return PendingTripNotification.class;
+    }
+
+    private static void putUuid(ByteBuffer buffer, UUID uuid) {
+        buffer.putLong(uuid.getMostSignificantBits());
+        buffer.putLong(uuid.getLeastSignificantBits());
+    }
+
+    private static UUID getUuid(ByteBuffer buffer) {
+        return new UUID(buffer.getLong(), buffer.getLong());
+    }
+
+    private static void putCoordinate(ByteBuffer buffer, double degrees) {
+        buffer.putInt((int) Math.round(degrees * COORDINATE_SCALE));
+    }
+
+    private static double getCoordinate(ByteBuffer buffer) {
+        return buffer.getInt() / COORDINATE_SCALE;
+    }
+
+    private static long toEpochMillis(LocalDateTime time) {
+        return time.toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+
+    private static LocalDateTime fromEpochMillis(long millis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneOffset.UTC);
+    }
+}
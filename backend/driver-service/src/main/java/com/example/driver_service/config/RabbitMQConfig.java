@@ -4,6 +4,7 @@ import org.springframework.amqp.core.Binding;
 import org.springframework.amqp.core.BindingBuilder;
 import org.springframework.amqp.core.Queue;
 import org.springframework.amqp.core.TopicExchange;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
 import org.springframework.amqp.rabbit.connection.ConnectionFactory;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
@@ -24,6 +25,24 @@ public class RabbitMQConfig {
     @Value("${rabbitmq.routing-key.trip-notification}")
     private String tripNotificationRoutingKey;
 
+    @Value("${rabbitmq.queue.trip-status}")
+    private String tripStatusQueue;
+
+    @Value("${rabbitmq.routing-key.trip-status}")
+    private String tripStatusRoutingKey;
+
+    @Value("${rabbitmq.listener.trip-notification.batch-size:100}")
+    private int tripNotificationBatchSize;
+
+    @Value("${rabbitmq.listener.trip-notification.receive-timeout-ms:50}")
+    private long tripNotificationReceiveTimeout;
+
+    @Value("${rabbitmq.listener.trip-status.batch-size:100}")
+    private int tripStatusBatchSize;
+
+    @Value("${rabbitmq.listener.trip-status.receive-timeout-ms:50}")
+    private long tripStatusReceiveTimeout;
+
     @Bean
     public TopicExchange tripExchange() {
         return new TopicExchange(tripExchange);
@@ -42,6 +61,20 @@ public class RabbitMQConfig {
                 .with(tripNotificationRoutingKey);
     }
 
+    @Bean
+    public Queue tripStatusQueue() {
+        return new Queue(tripStatusQueue, true);
+    }
+
+    // Nhận mọi trip.status.<status> trên cùng một queue để giữ thứ tự event của từng tài xế
+    @Bean
+    public Binding tripStatusBinding() {
+        return BindingBuilder
+                .bind(tripStatusQueue())
+                .to(tripExchange())
+                .with(tripStatusRoutingKey + ".#");
+    }
+
     @Bean
     public MessageConverter messageConverter() {
         return new Jackson2JsonMessageConverter();
@@ -53,4 +86,28 @@ public class RabbitMQConfig {
         rabbitTemplate.setMessageConverter(messageConverter());
         return rabbitTemplate;
     }
+
+    // Gom tối đa batch-size message hoặc chờ receive-timeout-ms, ack cả batch một lần
+    @Bean
+    public SimpleRabbitListenerContainerFactory tripNotificationBatchContainerFactory(ConnectionFactory connectionFactory) {
+        return batchContainerFactory(connectionFactory, tripNotificationBatchSize, tripNotificationReceiveTimeout);
+    }
+
+    @Bean
+    public SimpleRabbitListenerContainerFactory tripStatusBatchContainerFactory(ConnectionFactory connectionFactory) {
+        return batchContainerFactory(connectionFactory, tripStatusBatchSize, tripStatusReceiveTimeout);
+    }
+
+    private SimpleRabbitListenerContainerFactory batchContainerFactory(ConnectionFactory connectionFactory,
+                                                                       int batchSize, long receiveTimeout) {
+        SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
+        factory.setConnectionFactory(connectionFactory);
+        factory.setMessageConverter(messageConverter());
+        factory.setBatchListener(true);
+        factory.setConsumerBatchEnabled(true);
+        factory.setBatchSize(batchSize);
+        factory.setReceiveTimeout(receiveTimeout);
+        factory.setPrefetchCount(batchSize * 2);
+        return factory;
+    }
 }
@@ -1,5 +1,11 @@
 package com.example.driver_service.config;
 
+import com.example.driver_service.entity.PendingTripNotification;
+import com.example.driver_service.listener.DriverLocationFeedListener;
+import com.example.driver_service.listener.TripOfferRelayListener;
+import com.example.driver_service.repository.RedisDriverRepository;
+import com.example.driver_service.repository.RedisTripOfferRouteRepository;
+import com.example.driver_service.service.TripOfferPublisher;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.jsontype.BasicPolymorphicTypeValidator;
 import com.fasterxml.jackson.databind.jsontype.PolymorphicTypeValidator;
@@ -8,6 +14,8 @@ import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
 
@@ -28,7 +36,33 @@ public class RedisConfig {
         RedisTemplate<String, Object> template = new RedisTemplate<>();
         template.setConnectionFactory(redisConnectionFactory);
         template.setKeySerializer(new StringRedisSerializer());
-        
+
+        GenericJackson2JsonRedisSerializer serializer = jsonSerializer();
+
+        template.setValueSerializer(serializer);
+        template.setHashKeySerializer(new StringRedisSerializer());
+        template.setHashValueSerializer(serializer);
+        template.afterPropertiesSet();
+        return template;
+    }
+
+    // Pending trip offers dùng codec nhị phân; giá trị JSON cũ vẫn đọc được cho tới khi hết TTL
+    @Bean
+    public RedisTemplate<String, PendingTripNotification> pendingTripTemplate(RedisConnectionFactory redisConnectionFactory) {
+        RedisTemplate<String, PendingTripNotification> template = new RedisTemplate<>();
+        template.setConnectionFactory(redisConnectionFactory);
+        template.setKeySerializer(new StringRedisSerializer());
+
+        PendingTripNotificationSerializer serializer = new PendingTripNotificationSerializer(jsonSerializer());
+
+        template.setValueSerializer(serializer);
+        template.setHashKeySerializer(new StringRedisSerializer());
+        template.setHashValueSerializer(serializer);
+        template.afterPropertiesSet();
+        return template;
+    }
+
+    static GenericJackson2JsonRedisSerializer jsonSerializer() {
         // Configure ObjectMapper with JavaTimeModule for LocalDateTime support
         ObjectMapper objectMapper = new ObjectMapper();
         objectMapper.registerModule(new JavaTimeModule());
@@ -39,13 +73,22 @@ public class RedisConfig {
                 .build();
         objectMapper.activateDefaultTyping(ptv, ObjectMapper.DefaultTyping.NON_FINAL);
         
-        GenericJackson2JsonRedisSerializer serializer = new GenericJackson2JsonRedisSerializer(objectMapper);
-        
-        template.setValueSerializer(serializer);
-        template.setHashKeySerializer(new StringRedisSerializer());
-        template.setHashValueSerializer(serializer);
-        template.afterPropertiesSet();
-        return template;
+        return new GenericJackson2JsonRedisSerializer(objectMapper);
     }
-}
 
+    @Bean
+    public RedisMessageListenerContainer redisMessageListenerContainer(RedisConnectionFactory redisConnectionFactory,
+                                                                       DriverLocationFeedListener driverLocationFeedListener,
+                                                                       TripOfferRelayListener tripOfferRelayListener,
+                                                                       TripOfferPublisher tripOfferPublisher) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(redisConnectionFactory);
+        // Không subscribe lúc khởi động context: RedisListenerStarter start sau khi app sẵn sàng và thử lại nếu lỗi
+        container.setAutoStartup(false);
+        container.addMessageListener(driverLocationFeedListener,
+                new ChannelTopic(RedisDriverRepository.LOCATION_FEED_CHANNEL));
+        container.addMessageListener(tripOfferRelayListener,
+                new ChannelTopic(RedisTripOfferRouteRepository.relayChannel(tripOfferPublisher.getNodeId())));
+        return container;
+    }
+}
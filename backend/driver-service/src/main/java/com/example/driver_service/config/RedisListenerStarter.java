@@ -0,0 +1,47 @@
+package com.example.driver_service.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Starts the Redis pub/sub listeners once the application is ready, and keeps retrying while Redis
+ * is unreachable, so startup never depends on a live Redis just to feed the local caches.
+ */
+@Component
+@Slf4j
+public class RedisListenerStarter {
+
+    private final RedisMessageListenerContainer container;
+
+    private volatile boolean ready;
+
+    public RedisListenerStarter(RedisMessageListenerContainer container) {
+        this.container = container;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        ready = true;
+        startIfStopped();
+    }
+
+    @Scheduled(fixedDelayString = "${driver.redis.listener-retry-ms:5000}")
+    public void startIfStopped() {
+        if (!ready || container.isRunning()) {
+            return;
+        }
+
+        try {
+            container.start();
+            log.info("Redis pub/sub listeners started");
+        } catch (Exception e) {
+            // Dừng hẳn để lần thử sau subscribe lại từ đầu
+            container.stop();
+            log.warn("Failed to start Redis pub/sub listeners, retrying: {}", e.getMessage());
+        }
+    }
+}
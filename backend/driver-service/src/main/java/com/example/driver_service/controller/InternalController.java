@@ -1,6 +1,8 @@
 package com.example.driver_service.controller;
 
+import com.example.driver_service.dto.MatchingBenchmarkResponse;
 import com.example.driver_service.dto.NearbyDriverResponse;
+import com.example.driver_service.service.BatchMatchingService;
 import com.example.driver_service.service.DriverLocationService;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
@@ -13,8 +15,12 @@ public class InternalController {
 
     private final DriverLocationService driverLocationService;
 
-    public InternalController(DriverLocationService driverlocationService) {
+    private final BatchMatchingService batchMatchingService;
+
+    public InternalController(DriverLocationService driverlocationService,
+                              BatchMatchingService batchMatchingService) {
         this.driverLocationService = driverlocationService;
+        this.batchMatchingService = batchMatchingService;
     }
 
     @GetMapping("/nearby")
@@ -29,4 +35,17 @@ public class InternalController {
 
         return ResponseEntity.ok(drivers);
     }
+
+    // So sánh greedy và batch matching trên cùng tải (tài xế ONLINE từ simulator hoặc ngẫu nhiên)
+    @GetMapping("/matching/benchmark")
+    public ResponseEntity<MatchingBenchmarkResponse> benchmarkMatching(
+            @RequestParam(defaultValue = "10.7769") double lat,
+            @RequestParam(defaultValue = "106.7009") double lng,
+            @RequestParam(defaultValue = "5.0") double radiusKm,
+            @RequestParam(defaultValue = "200") int trips,
+            @RequestParam(defaultValue = "300") int drivers,
+            @RequestParam(defaultValue = "42") long seed
+    ) {
+        return ResponseEntity.ok(batchMatchingService.benchmark(lat, lng, radiusKm, trips, drivers, seed));
+    }
 }
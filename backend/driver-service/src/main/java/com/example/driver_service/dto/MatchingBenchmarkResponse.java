@@ -0,0 +1,31 @@
+package com.example.driver_service.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class MatchingBenchmarkResponse {
+
+    private int trips;
+
+    private int drivers;
+
+    private String driverSource; // live (simulator / real ONLINE drivers) or synthetic
+
+    private int greedyMatched;
+
+    private double greedyTotalPickupMeters;
+
+    private double greedyTripsPerSecond;
+
+    private int batchMatched;
+
+    private double batchTotalPickupMeters;
+
+    private double batchTripsPerSecond;
+}
@@ -0,0 +1,21 @@
+package com.example.driver_service.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class DriverLocation {
+
+    private String driverId;
+
+    private double latitude;
+
+    private double longitude;
+
+    private long timestamp; // epoch milliseconds
+}
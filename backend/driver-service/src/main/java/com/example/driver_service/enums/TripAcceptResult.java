@@ -0,0 +1,5 @@
+package com.example.driver_service.enums;
+
+public enum TripAcceptResult {
+    ACCEPTED, ALREADY_ACCEPTED, TAKEN, NOT_FOUND
+}
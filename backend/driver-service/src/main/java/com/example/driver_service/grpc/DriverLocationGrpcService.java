@@ -1,16 +1,43 @@
 package com.example.driver_service.grpc;
 
+import com.example.driver_service.entity.DriverLocation;
 import com.example.driver_service.service.DriverLocationService;
+import io.grpc.Status;
+import io.grpc.stub.ServerCallStreamObserver;
 import io.grpc.stub.StreamObserver;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
 @Component
+@Slf4j
 public class DriverLocationGrpcService extends DriverLocationServiceGrpc.DriverLocationServiceImplBase {
 
     private final DriverLocationService driverLocationService;
 
-    public DriverLocationGrpcService(DriverLocationService driverLocationService) {
+    private final int streamWindow;
+
+    private final int batchWindow;
+
+    private final int maxDictionarySize;
+
+    public DriverLocationGrpcService(DriverLocationService driverLocationService,
+                                     @Value("${driver.location.stream.window:64}") int streamWindow,
+                                     @Value("${driver.location.stream.batch-window:4}") int batchWindow,
+                                     @Value("${driver.location.stream.max-dictionary-size:100000}") int maxDictionarySize) {
         this.driverLocationService = driverLocationService;
+        this.streamWindow = streamWindow;
+        this.batchWindow = batchWindow;
+        this.maxDictionarySize = maxDictionarySize;
     }
 
     @Override
@@ -41,4 +68,244 @@ public class DriverLocationGrpcService extends DriverLocationServiceGrpc.DriverL
             }
         };
     }
+
+    @Override
+    public StreamObserver<LocationRequest> streamLocation(StreamObserver<LocationAck> responseObserver) {
+        ServerCallStreamObserver<LocationAck> serverObserver = (ServerCallStreamObserver<LocationAck>) responseObserver;
+
+        // Manual flow control: at most streamWindow requests in flight per stream,
+        // and a new one is requested only after an earlier one has been written to Redis
+        serverObserver.disableAutoRequest();
+        serverObserver.request(streamWindow);
+
+        AckingLocationObserver observer = new AckingLocationObserver(serverObserver);
+        serverObserver.setOnReadyHandler(observer::drain);
+        return observer;
+    }
+
+    @Override
+    public StreamObserver<LocationBatch> sendLocationBatch(StreamObserver<LocationBatchAck> responseObserver) {
+        ServerCallStreamObserver<LocationBatchAck> serverObserver =
+                (ServerCallStreamObserver<LocationBatchAck>) responseObserver;
+
+        // Same flow control as streamLocation, counted in batches instead of single updates
+        serverObserver.disableAutoRequest();
+        serverObserver.request(batchWindow);
+
+        LocationBatchObserver observer = new LocationBatchObserver(serverObserver, new LocationBatchDecoder(maxDictionarySize));
+        serverObserver.setOnReadyHandler(observer::drain);
+        return observer;
+    }
+
+    private final class AckingLocationObserver implements StreamObserver<LocationRequest> {
+
+        private final ServerCallStreamObserver<LocationAck> responseObserver;
+
+        // Guarded by this. Acks go by arrival order, not by the client timestamp, which may be 0;
+        // an unsent ack is replaced by a newer one for the same driver while the client is not reading
+        private final Map<String, Long> lastAcked = new HashMap<>();
+        private final Map<String, LocationAck> pendingAcks = new LinkedHashMap<>();
+        private long received;
+        private int deferredRequests;
+        private int inFlight;
+        private boolean halfClosed;
+        private boolean closed;
+
+        private AckingLocationObserver(ServerCallStreamObserver<LocationAck> responseObserver) {
+            this.responseObserver = responseObserver;
+        }
+
+        @Override
+        public void onNext(LocationRequest request) {
+            long sequence;
+            synchronized (this) {
+                inFlight++;
+                sequence = ++received;
+            }
+            driverLocationService.updateDriverLocation(
+                    request.getDriverId(),
+                    request.getLatitude(),
+                    request.getLongitude(),
+                    applied -> onApplied(request, sequence, applied)
+            );
+        }
+
+        private synchronized void onApplied(LocationRequest request, long sequence, boolean applied) {
+            inFlight--;
+            if (closed || responseObserver.isCancelled()) {
+                return;
+            }
+
+            Long last = lastAcked.get(request.getDriverId());
+            if (applied && (last == null || sequence > last)) {
+                lastAcked.put(request.getDriverId(), sequence);
+                pendingAcks.put(request.getDriverId(), LocationAck.newBuilder()
+                        .setDriverId(request.getDriverId())
+                        .setTimestamp(request.getTimestamp())
+                        .build());
+            }
+
+            deferredRequests++;
+            drain();
+        }
+
+        // Also the onReady handler: acks are written only while the transport is ready, and
+        // more requests are asked for only once they are all out
+        private synchronized void drain() {
+            if (closed || responseObserver.isCancelled()) {
+                return;
+            }
+
+            Iterator<LocationAck> it = pendingAcks.values().iterator();
+            while (it.hasNext() && responseObserver.isReady()) {
+                responseObserver.onNext(it.next());
+                it.remove();
+            }
+            if (!pendingAcks.isEmpty()) {
+                return;
+            }
+
+            if (halfClosed) {
+                completeIfDrained();
+            } else if (deferredRequests > 0) {
+                responseObserver.request(deferredRequests);
+                deferredRequests = 0;
+            }
+        }
+
+        @Override
+        public synchronized void onError(Throwable throwable) {
+            closed = true;
+            log.warn("Error in acknowledged location stream: {}", throwable.getMessage());
+        }
+
+        @Override
+        public synchronized void onCompleted() {
+            halfClosed = true;
+            completeIfDrained();
+        }
+
+        // Keep the stream open until every received update has been acked
+        private void completeIfDrained() {
+            if (inFlight == 0 && pendingAcks.isEmpty() && !closed) {
+                closed = true;
+                responseObserver.onCompleted();
+            }
+        }
+    }
+
+    private final class LocationBatchObserver implements StreamObserver<LocationBatch> {
+
+        private final ServerCallStreamObserver<LocationBatchAck> responseObserver;
+        private final LocationBatchDecoder decoder;
+
+        // Guarded by this
+        private final Deque<LocationBatchAck> pendingAcks = new ArrayDeque<>();
+        private int deferredRequests;
+        private int inFlight;
+        private boolean halfClosed;
+        private boolean closed;
+
+        private LocationBatchObserver(ServerCallStreamObserver<LocationBatchAck> responseObserver,
+                                      LocationBatchDecoder decoder) {
+            this.responseObserver = responseObserver;
+            this.decoder = decoder;
+        }
+
+        @Override
+        public void onNext(LocationBatch batch) {
+            List<DriverLocation> locations;
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                try {
+                    locations = decoder.decode(batch);
+                } catch (IllegalArgumentException e) {
+                    closed = true;
+                    responseObserver.onError(Status.INVALID_ARGUMENT.withDescription(e.getMessage()).asRuntimeException());
+                    return;
+                }
+                inFlight++;
+            }
+
+            if (locations.isEmpty()) {
+                onBatchApplied(batch.getSequence(), 0);
+                return;
+            }
+
+            AtomicInteger remaining = new AtomicInteger(locations.size());
+            AtomicInteger applied = new AtomicInteger();
+            for (DriverLocation location : locations) {
+                driverLocationService.updateDriverLocation(
+                        location.getDriverId(),
+                        location.getLatitude(),
+                        location.getLongitude(),
+                        ok -> {
+                            if (ok) {
+                                applied.incrementAndGet();
+                            }
+                            if (remaining.decrementAndGet() == 0) {
+                                onBatchApplied(batch.getSequence(), applied.get());
+                            }
+                        }
+                );
+            }
+        }
+
+        private synchronized void onBatchApplied(long sequence, int applied) {
+            inFlight--;
+            if (closed || responseObserver.isCancelled()) {
+                return;
+            }
+
+            pendingAcks.add(LocationBatchAck.newBuilder()
+                    .setSequence(sequence)
+                    .setApplied(applied)
+                    .build());
+
+            deferredRequests++;
+            drain();
+        }
+
+        // Same gating as AckingLocationObserver.drain
+        private synchronized void drain() {
+            if (closed || responseObserver.isCancelled()) {
+                return;
+            }
+
+            while (!pendingAcks.isEmpty() && responseObserver.isReady()) {
+                responseObserver.onNext(pendingAcks.poll());
+            }
+            if (!pendingAcks.isEmpty()) {
+                return;
+            }
+
+            if (halfClosed) {
+                completeIfDrained();
+            } else if (deferredRequests > 0) {
+                responseObserver.request(deferredRequests);
+                deferredRequests = 0;
+            }
+        }
+
+        @Override
+        public synchronized void onError(Throwable throwable) {
+            closed = true;
+            log.warn("Error in location batch stream: {}", throwable.getMessage());
+        }
+
+        @Override
+        public synchronized void onCompleted() {
+            halfClosed = true;
+            completeIfDrained();
+        }
+
+        private void completeIfDrained() {
+            if (inFlight == 0 && pendingAcks.isEmpty() && !closed) {
+                closed = true;
+                responseObserver.onCompleted();
+            }
+        }
+    }
 }
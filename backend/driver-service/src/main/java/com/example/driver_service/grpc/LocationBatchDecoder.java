@@ -0,0 +1,70 @@
+package com.example.driver_service.grpc;
+
+import com.example.driver_service.entity.DriverLocation;
+import com.example.driver_service.utils.GeoUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Decodes {@link LocationBatch} frames of one stream. Holds the stream's driver-id dictionary,
+ * so one instance must be used per stream and never shared.
+ */
+public class LocationBatchDecoder {
+
+    private static final double COORDINATE_SCALE = 1e6;
+
+    private final List<String> dictionary = new ArrayList<>();
+    private final int maxDictionarySize;
+
+    public LocationBatchDecoder(int maxDictionarySize) {
+        this.maxDictionarySize = maxDictionarySize;
+    }
+
+    public List<DriverLocation> decode(LocationBatch batch) {
+        if (dictionary.size() + batch.getNewDriverIdsCount() > maxDictionarySize) {
+            throw new IllegalArgumentException("Driver dictionary exceeds " + maxDictionarySize + " entries");
+        }
+        dictionary.addAll(batch.getNewDriverIdsList());
+
+        int count = batch.getDriverIndexCount();
+        if (batch.getLatitudeDeltaCount() != count
+                || batch.getLongitudeDeltaCount() != count
+                || batch.getTimestampDeltaCount() != count) {
+            throw new IllegalArgumentException("Batch " + batch.getSequence() + " has columns of different lengths");
+        }
+
+        List<DriverLocation> locations = new ArrayList<>(count);
+        int lat = 0;
+        int lng = 0;
+        long timestamp = batch.getBaseTimestamp();
+
+        for (int i = 0; i < count; i++) {
+            // uint32 >= 2^31 arrives as a negative int
+            int index = batch.getDriverIndex(i);
+            if (index < 0 || index >= dictionary.size()) {
+                throw new IllegalArgumentException("Unknown driver index " + index + " in batch " + batch.getSequence());
+            }
+
+            lat += batch.getLatitudeDelta(i);
+            lng += batch.getLongitudeDelta(i);
+            timestamp += batch.getTimestampDelta(i);
+
+            double latitude = lat / COORDINATE_SCALE;
+            double longitude = lng / COORDINATE_SCALE;
+            if (!GeoUtils.isValidPosition(latitude, longitude)) {
+                throw new IllegalArgumentException("Invalid position (" + latitude + ", " + longitude
+                        + ") at row " + i + " of batch " + batch.getSequence());
+            }
+
+            locations.add(new DriverLocation(
+                    dictionary.get(index),
+                    latitude,
+                    longitude,
+                    timestamp
+            ));
+        }
+
+        return locations;
+    }
+}
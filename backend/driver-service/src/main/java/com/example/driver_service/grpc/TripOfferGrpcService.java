@@ -0,0 +1,59 @@
+package com.example.driver_service.grpc;
+
+import com.example.driver_service.entity.PendingTripNotification;
+import com.example.driver_service.security.DriverGrpcAuthInterceptor;
+import com.example.driver_service.service.ITripNotificationService;
+import com.example.driver_service.service.TripOfferPublisher;
+import io.grpc.Status;
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.StreamObserver;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.UUID;
+
+@Component
+@Slf4j
+public class TripOfferGrpcService extends TripOfferServiceGrpc.TripOfferServiceImplBase {
+
+    private final TripOfferPublisher tripOfferPublisher;
+
+    private final ITripNotificationService tripNotificationService;
+
+    public TripOfferGrpcService(TripOfferPublisher tripOfferPublisher,
+                                ITripNotificationService tripNotificationService) {
+        this.tripOfferPublisher = tripOfferPublisher;
+        this.tripNotificationService = tripNotificationService;
+    }
+
+    @Override
+    public void subscribeTripOffers(TripOfferSubscription request, StreamObserver<TripOffer> responseObserver) {
+        // Tài xế lấy từ token đã xác thực, không tin driverId trong request
+        UUID driverId = DriverGrpcAuthInterceptor.DRIVER_ID.get();
+        if (driverId == null) {
+            responseObserver.onError(Status.UNAUTHENTICATED.asRuntimeException());
+            return;
+        }
+        if (!request.getDriverId().isEmpty() && !request.getDriverId().equals(driverId.toString())) {
+            responseObserver.onError(Status.PERMISSION_DENIED
+                    .withDescription("driverId does not match the authenticated driver")
+                    .asRuntimeException());
+            return;
+        }
+
+        ServerCallStreamObserver<TripOffer> serverObserver = (ServerCallStreamObserver<TripOffer>) responseObserver;
+        String id = driverId.toString();
+        serverObserver.setOnCancelHandler(() -> tripOfferPublisher.unsubscribe(id, serverObserver));
+        tripOfferPublisher.subscribe(id, serverObserver);
+
+        // Offers made before the stream opened; one may also arrive by push, clients de-duplicate by tripId
+        for (PendingTripNotification pending : tripNotificationService.getPendingNotificationsForDriver(driverId)) {
+            synchronized (serverObserver) {
+                if (serverObserver.isCancelled()) {
+                    return;
+                }
+                serverObserver.onNext(TripOfferPublisher.toTripOffer(pending));
+            }
+        }
+    }
+}
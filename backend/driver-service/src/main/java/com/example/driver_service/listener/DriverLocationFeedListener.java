@@ -0,0 +1,48 @@
+package com.example.driver_service.listener;
+
+import com.example.driver_service.repository.DriverGridIndex;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Mirrors the Redis ONLINE GEO set into the local {@link DriverGridIndex}.
+ * Messages are {@code L|id,lng,lat|id,lng,lat...} for positions, {@code R|id} for removals,
+ * {@code V|id|ttlMs} for trip reservations and {@code U|id} for released reservations.
+ */
+@Component
+@Slf4j
+public class DriverLocationFeedListener implements MessageListener {
+
+    private final DriverGridIndex driverGridIndex;
+
+    public DriverLocationFeedListener(DriverGridIndex driverGridIndex) {
+        this.driverGridIndex = driverGridIndex;
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        String[] parts = body.split("\\|");
+
+        try {
+            switch (parts[0]) {
+                case "L" -> {
+                    for (int i = 1; i < parts.length; i++) {
+                        String[] entry = parts[i].split(",");
+                        driverGridIndex.put(entry[0], Double.parseDouble(entry[2]), Double.parseDouble(entry[1]));
+                    }
+                }
+                case "R" -> driverGridIndex.remove(parts[1]);
+                case "V" -> driverGridIndex.reserve(parts[1], Long.parseLong(parts[2]));
+                case "U" -> driverGridIndex.release(parts[1]);
+                default -> log.warn("Unknown driver location feed message: {}", body);
+            }
+        } catch (RuntimeException e) {
+            log.error("Failed to apply driver location feed message: {}, error={}", body, e.getMessage());
+        }
+    }
+}
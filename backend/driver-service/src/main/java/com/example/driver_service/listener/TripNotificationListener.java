@@ -6,6 +6,8 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.amqp.rabbit.annotation.RabbitListener;
 import org.springframework.stereotype.Component;
 
+import java.util.List;
+
 @Component
 @Slf4j
 public class TripNotificationListener {
@@ -16,17 +18,22 @@ public class TripNotificationListener {
         this.tripNotificationService = tripNotificationService;
     }
 
-    @RabbitListener(queues = "${rabbitmq.queue.trip-notification}")
-    public void handleTripNotification(TripNotificationRequest notification) {
-        log.info("Received trip notification from RabbitMQ: tripId={}, passengerId={}", 
-                notification.getTripId(), notification.getPassengerId());
+    /**
+     * Receives up to {@code rabbitmq.listener.trip-notification.batch-size} messages at once.
+     * The batch is acked together after it has been written to Redis; on failure the whole batch
+     * is redelivered, and storing an offer again is harmless.
+     */
+    @RabbitListener(queues = "${rabbitmq.queue.trip-notification}",
+            containerFactory = "tripNotificationBatchContainerFactory")
+    public void handleTripNotifications(List<TripNotificationRequest> notifications) {
+        log.info("Received {} trip notifications from RabbitMQ", notifications.size());
 
         try {
-            tripNotificationService.handleTripNotification(notification);
-            log.info("Successfully processed trip notification: tripId={}", notification.getTripId());
+            tripNotificationService.handleTripNotifications(notifications);
+            log.info("Successfully processed {} trip notifications", notifications.size());
         } catch (Exception e) {
-            log.error("Error processing trip notification: tripId={}, error={}", 
-                    notification.getTripId(), e.getMessage(), e);
+            log.error("Error processing trip notification batch: size={}, error={}", 
+                    notifications.size(), e.getMessage(), e);
             throw e; // Re-throw to let RabbitMQ handle retry
         }
     }
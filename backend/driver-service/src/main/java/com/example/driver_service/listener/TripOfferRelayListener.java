@@ -0,0 +1,26 @@
+package com.example.driver_service.listener;
+
+import com.example.driver_service.service.TripOfferPublisher;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Receives trip offers relayed by other nodes for drivers whose offer stream is open on this node.
+ */
+@Component
+public class TripOfferRelayListener implements MessageListener {
+
+    private final TripOfferPublisher tripOfferPublisher;
+
+    public TripOfferRelayListener(TripOfferPublisher tripOfferPublisher) {
+        this.tripOfferPublisher = tripOfferPublisher;
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        tripOfferPublisher.onRelayed(new String(message.getBody(), StandardCharsets.UTF_8));
+    }
+}
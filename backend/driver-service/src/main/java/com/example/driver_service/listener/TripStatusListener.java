@@ -0,0 +1,48 @@
+package com.example.driver_service.listener;
+
+import com.example.driver_service.dto.TripStatusEvent;
+import com.example.driver_service.service.DispatchService;
+import com.example.driver_service.service.DriverStatusService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+@Component
+@Slf4j
+public class TripStatusListener {
+
+    private final DriverStatusService driverStatusService;
+
+    private final DispatchService dispatchService;
+
+    public TripStatusListener(DriverStatusService driverStatusService, DispatchService dispatchService) {
+        this.driverStatusService = driverStatusService;
+        this.dispatchService = dispatchService;
+    }
+
+    /**
+     * Trip lifecycle events from trip-service, in batches. Applying an event twice is a no-op,
+     * so a failed batch is simply redelivered.
+     */
+    @RabbitListener(queues = "${rabbitmq.queue.trip-status}",
+            containerFactory = "tripStatusBatchContainerFactory")
+    public void handleTripStatusEvents(List<TripStatusEvent> events) {
+        log.info("Received {} trip status events from RabbitMQ", events.size());
+
+        try {
+            driverStatusService.applyTripEvents(events);
+
+            for (TripStatusEvent event : events) {
+                if ("CANCELLED".equals(event.getStatus())) {
+                    dispatchService.onCancelled(event.getTripId());
+                }
+            }
+        } catch (Exception e) {
+            log.error("Error processing trip status events: size={}, error={}", 
+                    events.size(), e.getMessage(), e);
+            throw e; // Re-throw to let RabbitMQ handle retry
+        }
+    }
+}
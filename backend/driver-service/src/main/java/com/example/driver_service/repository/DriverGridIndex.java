@@ -0,0 +1,309 @@
+package com.example.driver_service.repository;
+
+import com.example.driver_service.dto.NearbyDriverResponse;
+import com.example.driver_service.utils.GeoUtils;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Repository;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-process grid of ONLINE driver positions, used as an L1 in front of Redis for nearby search.
+ * <p>
+ * Redis stays the source of truth: the index mirrors the ONLINE GEO set through
+ * {@link RedisDriverRepository#LOCATION_FEED_CHANNEL}, and entries older than
+ * {@code driver.index.max-staleness-ms} are never returned. Drivers reserved for a trip offer
+ * are skipped until the reservation is released or its TTL passes. Callers must fall back to
+ * {@link RedisDriverRepository} while {@link #isWarm()} is false.
+ */
+@Repository
+@Slf4j
+public class DriverGridIndex {
+
+    private static final int STRIPES = 64;
+
+    private final boolean enabled;
+    private final double cellSizeDeg;
+    private final long maxStalenessMillis;
+
+    private final Map<Long, Cell> cells = new ConcurrentHashMap<>();
+    private final Map<String, Long> driverCells = new ConcurrentHashMap<>();
+    private final Map<String, Long> reservedUntil = new ConcurrentHashMap<>();
+    private final ReentrantReadWriteLock[] locks = new ReentrantReadWriteLock[STRIPES];
+
+    private final AtomicLong firstFeedAt = new AtomicLong();
+    private final AtomicLong lastFeedAt = new AtomicLong();
+
+    public DriverGridIndex(@Value("${driver.index.enabled:true}") boolean enabled,
+                           @Value("${driver.index.cell-size-deg:0.01}") double cellSizeDeg,
+                           @Value("${driver.index.max-staleness-ms:10000}") long maxStalenessMillis) {
+        this.enabled = enabled;
+        this.cellSizeDeg = cellSizeDeg;
+        this.maxStalenessMillis = maxStalenessMillis;
+        for (int i = 0; i < STRIPES; i++) {
+            locks[i] = new ReentrantReadWriteLock();
+        }
+    }
+
+    /**
+     * The index is warm once it has followed the feed for a full staleness window
+     * (every ONLINE driver has reported at least once since) and the feed is still alive.
+     */
+    public boolean isWarm() {
+        if (!enabled) {
+            return false;
+        }
+        long now = System.currentTimeMillis();
+        long first = firstFeedAt.get();
+        return first > 0
+                && now - first >= maxStalenessMillis
+                && now - lastFeedAt.get() < maxStalenessMillis;
+    }
+
+    /** Applies an update from the Redis feed: the driver is ONLINE at this position. */
+    public void put(String driverId, double lat, double lng) {
+        if (!enabled) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        markFeed(now);
+        driverCells.compute(driverId, (id, oldCell) -> move(id, oldCell, lat, lng, now));
+    }
+
+    /** Applies a removal from the Redis feed: the driver left the ONLINE set. */
+    public void remove(String driverId) {
+        if (!enabled) {
+            return;
+        }
+        markFeed(System.currentTimeMillis());
+        driverCells.computeIfPresent(driverId, (id, cell) -> {
+            removeFromCell(cell, id);
+            return null;
+        });
+    }
+
+    /** Applies a reservation from the Redis feed: skip the driver for {@code ttlMillis}. */
+    public void reserve(String driverId, long ttlMillis) {
+        if (!enabled) {
+            return;
+        }
+        reservedUntil.put(driverId, System.currentTimeMillis() + ttlMillis);
+    }
+
+    /** Applies a released reservation from the Redis feed. */
+    public void release(String driverId) {
+        reservedUntil.remove(driverId);
+    }
+
+    /**
+     * Updates the position of a driver already known to be ONLINE, straight from the gRPC stream.
+     * Unknown drivers are ignored: only the feed decides who is ONLINE.
+     */
+    public void refresh(String driverId, double lat, double lng) {
+        if (!enabled) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        driverCells.computeIfPresent(driverId, (id, oldCell) -> move(id, oldCell, lat, lng, now));
+    }
+
+    public List<NearbyDriverResponse> findNearest(double lat, double lng, double radiusKm, int limit) {
+        double radiusMeters = radiusKm * 1000;
+        double dLat = radiusKm / 111.0;
+        double dLng = radiusKm / (111.0 * Math.max(Math.cos(Math.toRadians(lat)), 0.01));
+        long now = System.currentTimeMillis();
+        long freshAfter = now - maxStalenessMillis;
+
+        int minRow = cellIndex(lat - dLat);
+        int maxRow = cellIndex(lat + dLat);
+        int minCol = cellIndex(lng - dLng);
+        int maxCol = cellIndex(lng + dLng);
+
+        List<NearbyDriverResponse> candidates = new ArrayList<>();
+        for (int row = minRow; row <= maxRow; row++) {
+            for (int col = minCol; col <= maxCol; col++) {
+                long key = cellKey(row, col);
+                Cell cell = cells.get(key);
+                if (cell == null) {
+                    continue;
+                }
+
+                ReentrantReadWriteLock.ReadLock lock = lockFor(key).readLock();
+                lock.lock();
+                try {
+                    for (int i = 0; i < cell.size; i++) {
+                        if (cell.updatedAt[i] < freshAfter || isReserved(cell.ids[i], now)) {
+                            continue;
+                        }
+                        double distance = GeoUtils.distanceMeters(lat, lng, cell.lats[i], cell.lngs[i]);
+                        if (distance <= radiusMeters) {
+                            candidates.add(new NearbyDriverResponse(cell.ids[i], cell.lats[i], cell.lngs[i], distance));
+                        }
+                    }
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+
+        candidates.sort(Comparator.comparingDouble(NearbyDriverResponse::getDistanceInMeters));
+        return candidates.size() > limit ? candidates.subList(0, limit) : candidates;
+    }
+
+    @Scheduled(fixedDelayString = "${driver.index.max-staleness-ms:10000}")
+    public void evictStale() {
+        long freshAfter = System.currentTimeMillis() - maxStalenessMillis;
+        List<String> stale = new ArrayList<>();
+
+        cells.forEach((key, cell) -> {
+            ReentrantReadWriteLock.ReadLock lock = lockFor(key).readLock();
+            lock.lock();
+            try {
+                for (int i = 0; i < cell.size; i++) {
+                    if (cell.updatedAt[i] < freshAfter) {
+                        stale.add(cell.ids[i]);
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+        });
+
+        for (String driverId : stale) {
+            // Re-check under the driver's entry: it may have been refreshed since the scan
+            driverCells.computeIfPresent(driverId, (id, key) -> {
+                Cell cell = cells.get(key);
+                ReentrantReadWriteLock.WriteLock lock = lockFor(key).writeLock();
+                lock.lock();
+                try {
+                    int i = cell == null ? -1 : cell.indexOf(id);
+                    if (i >= 0 && cell.updatedAt[i] >= freshAfter) {
+                        return key;
+                    }
+                    if (i >= 0) {
+                        cell.removeAt(i);
+                    }
+                    return null;
+                } finally {
+                    lock.unlock();
+                }
+            });
+        }
+
+        if (!stale.isEmpty()) {
+            log.debug("Evicted {} stale drivers from the local grid index", stale.size());
+        }
+
+        long now = System.currentTimeMillis();
+        reservedUntil.values().removeIf(until -> until <= now);
+    }
+
+    private boolean isReserved(String driverId, long now) {
+        Long until = reservedUntil.get(driverId);
+        return until != null && until > now;
+    }
+
+    private Long move(String driverId, Long oldCell, double lat, double lng, long now) {
+        long newCell = cellKey(cellIndex(lat), cellIndex(lng));
+        if (oldCell != null && oldCell != newCell) {
+            removeFromCell(oldCell, driverId);
+        }
+
+        ReentrantReadWriteLock.WriteLock lock = lockFor(newCell).writeLock();
+        lock.lock();
+        try {
+            cells.computeIfAbsent(newCell, k -> new Cell()).upsert(driverId, lat, lng, now);
+        } finally {
+            lock.unlock();
+        }
+        return newCell;
+    }
+
+    private void removeFromCell(long key, String driverId) {
+        ReentrantReadWriteLock.WriteLock lock = lockFor(key).writeLock();
+        lock.lock();
+        try {
+            Cell cell = cells.get(key);
+            if (cell != null) {
+                int i = cell.indexOf(driverId);
+                if (i >= 0) {
+                    cell.removeAt(i);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void markFeed(long now) {
+        firstFeedAt.compareAndSet(0, now);
+        lastFeedAt.set(now);
+    }
+
+    private int cellIndex(double degrees) {
+        return (int) Math.floor(degrees / cellSizeDeg);
+    }
+
+    private static long cellKey(int row, int col) {
+        return ((long) row << 32) | (col & 0xffffffffL);
+    }
+
+    private ReentrantReadWriteLock lockFor(long key) {
+        return locks[(int) ((key ^ (key >>> 32)) & (STRIPES - 1))];
+    }
+
+    /** Drivers of one grid cell, stored column-wise in parallel primitive arrays. */
+    private static final class Cell {
+
+        private String[] ids = new String[8];
+        private double[] lats = new double[8];
+        private double[] lngs = new double[8];
+        private long[] updatedAt = new long[8];
+        private int size;
+
+        int indexOf(String driverId) {
+            for (int i = 0; i < size; i++) {
+                if (ids[i].equals(driverId)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        void upsert(String driverId, double lat, double lng, long now) {
+            int i = indexOf(driverId);
+            if (i < 0) {
+                if (size == ids.length) {
+                    int capacity = size * 2;
+                    ids = Arrays.copyOf(ids, capacity);
+                    lats = Arrays.copyOf(lats, capacity);
+                    lngs = Arrays.copyOf(lngs, capacity);
+                    updatedAt = Arrays.copyOf(updatedAt, capacity);
+                }
+                i = size++;
+                ids[i] = driverId;
+            }
+            lats[i] = lat;
+            lngs[i] = lng;
+            updatedAt[i] = now;
+        }
+
+        void removeAt(int i) {
+            int last = --size;
+            ids[i] = ids[last];
+            lats[i] = lats[last];
+            lngs[i] = lngs[last];
+            updatedAt[i] = updatedAt[last];
+            ids[last] = null;
+        }
+    }
+}
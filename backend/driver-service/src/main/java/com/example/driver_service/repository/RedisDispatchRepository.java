@@ -0,0 +1,210 @@
+package com.example.driver_service.repository;
+
+import com.example.driver_service.dto.TripNotificationRequest;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Repository;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Dispatch state of a trip while driver-service looks for a driver:
+ * <ul>
+ *     <li>{@code dispatch:{tripId}} - hash with the trip details, {@code status}, {@code round} and {@code startedAt}</li>
+ *     <li>{@code dispatch:{tripId}:candidates} - ZSET of drivers not offered yet, best first</li>
+ *     <li>{@code dispatch:{tripId}:tried} - SET of drivers already offered the trip</li>
+ * </ul>
+ * Live offers are the {@code trip:{tripId}:notified_drivers} set of {@link RedisPendingTripRepository}.
+ * {@code dispatch:retry} is a ZSET of trips waiting for reserved candidates, scored by when to try again.
+ */
+@Repository
+public class RedisDispatchRepository {
+
+    public static final String SEARCHING = "SEARCHING";
+    public static final String MATCHED = "MATCHED";
+    public static final String FAILED = "FAILED";
+    public static final String CANCELLED = "CANCELLED";
+
+    private static final String DISPATCH_PREFIX = "dispatch:";
+    private static final String CANDIDATES_SUFFIX = ":candidates";
+    private static final String TRIED_SUFFIX = ":tried";
+    private static final String RETRY_KEY = "dispatch:retry";
+
+    // Candidates of round r score r * ROUND_WEIGHT + rank, so earlier rounds always come first
+    private static final double ROUND_WEIGHT = 1_000_000;
+
+    private static final RedisScript<Long> DISPATCH_CREATE_SCRIPT =
+            RedisScript.of(new ClassPathResource("scripts/dispatch_create.lua"), Long.class);
+
+    private static final RedisScript<List> DISPATCH_NEXT_SCRIPT =
+            RedisScript.of(new ClassPathResource("scripts/dispatch_next.lua"), List.class);
+
+    private static final RedisScript<Long> DISPATCH_FINISH_SCRIPT =
+            RedisScript.of(new ClassPathResource("scripts/dispatch_finish.lua"), Long.class);
+
+    private final RedisTemplate<String, String> redisTemplate;
+
+    public RedisDispatchRepository(@Qualifier("redisTemplate") RedisTemplate<String, String> redisTemplate) {
+        this.redisTemplate = redisTemplate;
+    }
+
+    /**
+     * Creates the dispatch of a trip with its first-round candidates, in one script call.
+     * Returns false, and changes nothing, if the trip already has a dispatch.
+     */
+    public boolean create(TripNotificationRequest trip, List<String> candidates, long ttlSeconds) {
+        String tripId = trip.getTripId().toString();
+
+        Map<String, String> fields = new LinkedHashMap<>();
+        fields.put("round", "0");
+        fields.put("startedAt", String.valueOf(System.currentTimeMillis()));
+        putIfPresent(fields, "passengerId", trip.getPassengerId());
+        putIfPresent(fields, "passengerName", trip.getPassengerName());
+        putIfPresent(fields, "pickupLatitude", trip.getPickupLatitude());
+        putIfPresent(fields, "pickupLongitude", trip.getPickupLongitude());
+        putIfPresent(fields, "destinationLatitude", trip.getDestinationLatitude());
+        putIfPresent(fields, "destinationLongitude", trip.getDestinationLongitude());
+        putIfPresent(fields, "estimatedFare", trip.getEstimatedFare());
+        putIfPresent(fields, "distanceKm", trip.getDistanceKm());
+
+        List<String> args = new ArrayList<>(2 + fields.size() * 2 + candidates.size());
+        args.add(String.valueOf(ttlSeconds));
+        args.add(String.valueOf(fields.size()));
+        fields.forEach((name, value) -> {
+            args.add(name);
+            args.add(value);
+        });
+        args.addAll(candidates);
+
+        // HSETNX on status: a redelivered notification must not reset round/startedAt of a running dispatch
+        Long created = redisTemplate.execute(DISPATCH_CREATE_SCRIPT,
+                List.of(dispatchKey(tripId), candidatesKey(tripId)), args.toArray());
+        return created != null && created == 1;
+    }
+
+    /** Adds the candidates of a wider search round; drivers already tried are skipped by {@link #next}. */
+    @SuppressWarnings("unchecked")
+    public void addCandidates(UUID tripId, int round, List<String> candidates, long ttlSeconds) {
+        String trip = tripId.toString();
+
+        redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            public <K, V> Object execute(RedisOperations<K, V> operations) {
+                RedisOperations<String, String> ops = (RedisOperations<String, String>) operations;
+
+                ops.opsForHash().put(dispatchKey(trip), "round", String.valueOf(round));
+                for (int i = 0; i < candidates.size(); i++) {
+                    ops.opsForZSet().addIfAbsent(candidatesKey(trip), candidates.get(i), round * ROUND_WEIGHT + i);
+                }
+                ops.expire(candidatesKey(trip), ttlSeconds, TimeUnit.SECONDS);
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Atomically takes the next candidates for the free offer slots (at most {@code parallelOffers} live offers),
+     * reserves them for the trip for {@code reservationTtlMillis} and marks them tried and offered.
+     * Candidates reserved by another trip are skipped and kept. The first element is the outcome:
+     * OFFER, WAITING, RESERVED (followed by the millis until a skipped reservation expires), EXHAUSTED or STOPPED.
+     */
+    @SuppressWarnings("unchecked")
+    public List<String> next(UUID tripId, int parallelOffers, long reservationTtlMillis) {
+        String trip = tripId.toString();
+        List<String> result = redisTemplate.execute(DISPATCH_NEXT_SCRIPT,
+                List.of(dispatchKey(trip), candidatesKey(trip), triedKey(trip),
+                        RedisPendingTripRepository.tripIndexKey(trip), RedisPendingTripRepository.claimKey(trip)),
+                String.valueOf(parallelOffers), trip, String.valueOf(reservationTtlMillis),
+                RedisDriverRepository.LOCATION_FEED_CHANNEL);
+        return result != null ? result : Collections.singletonList("STOPPED");
+    }
+
+    /** Schedules another {@link #next} for a trip whose candidates are all reserved by other trips. */
+    public void scheduleRetry(UUID tripId, long dueAtMillis) {
+        redisTemplate.opsForZSet().add(RETRY_KEY, tripId.toString(), dueAtMillis);
+    }
+
+    /** Removes and returns up to {@code limit} trips whose retry is due, oldest first. */
+    public List<UUID> takeDueRetries(long now, int limit) {
+        Set<String> due = redisTemplate.opsForZSet().rangeByScore(RETRY_KEY, 0, now, 0, limit);
+        if (due == null || due.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        redisTemplate.opsForZSet().remove(RETRY_KEY, due.toArray());
+        return due.stream().map(UUID::fromString).toList();
+    }
+
+    /** Trip details as stored by {@link #create}, with {@code nearbyDriverIds} left empty. */
+    public Optional<DispatchState> find(UUID tripId) {
+        Map<Object, Object> fields = redisTemplate.opsForHash().entries(dispatchKey(tripId.toString()));
+        if (fields.isEmpty()) {
+            return Optional.empty();
+        }
+
+        TripNotificationRequest trip = TripNotificationRequest.builder()
+                .tripId(tripId)
+                .passengerId(uuid(fields.get("passengerId")))
+                .passengerName((String) fields.get("passengerName"))
+                .pickupLatitude(number(fields.get("pickupLatitude")))
+                .pickupLongitude(number(fields.get("pickupLongitude")))
+                .destinationLatitude(number(fields.get("destinationLatitude")))
+                .destinationLongitude(number(fields.get("destinationLongitude")))
+                .estimatedFare(fields.get("estimatedFare") != null ? new BigDecimal((String) fields.get("estimatedFare")) : null)
+                .distanceKm(number(fields.get("distanceKm")))
+                .build();
+
+        return Optional.of(new DispatchState(trip,
+                (String) fields.get("status"),
+                Integer.parseInt((String) fields.getOrDefault("round", "0")),
+                Long.parseLong((String) fields.getOrDefault("startedAt", "0"))));
+    }
+
+    /** Moves a dispatch from SEARCHING to {@code status}; returns false if it had already left SEARCHING. */
+    public boolean finish(UUID tripId, String status) {
+        Long result = redisTemplate.execute(DISPATCH_FINISH_SCRIPT, List.of(dispatchKey(tripId.toString())), status);
+        return result != null && result == 1;
+    }
+
+    private static void putIfPresent(Map<String, String> fields, String name, Object value) {
+        if (value != null) {
+            fields.put(name, value instanceof BigDecimal decimal ? decimal.toPlainString() : value.toString());
+        }
+    }
+
+    private static UUID uuid(Object value) {
+        return value != null ? UUID.fromString((String) value) : null;
+    }
+
+    private static Double number(Object value) {
+        return value != null ? Double.valueOf((String) value) : null;
+    }
+
+    private static String dispatchKey(String tripId) {
+        return DISPATCH_PREFIX + tripId;
+    }
+
+    private static String candidatesKey(String tripId) {
+        return DISPATCH_PREFIX + tripId + CANDIDATES_SUFFIX;
+    }
+
+    private static String triedKey(String tripId) {
+        return DISPATCH_PREFIX + tripId + TRIED_SUFFIX;
+    }
+
+    public record DispatchState(TripNotificationRequest trip, String status, int round, long startedAt) {
+    }
+}
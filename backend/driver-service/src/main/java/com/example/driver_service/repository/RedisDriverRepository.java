@@ -1,42 +1,140 @@
 package com.example.driver_service.repository;
 
+import com.example.driver_service.dto.TripStatusEvent;
+import com.example.driver_service.entity.DriverLocation;
 import com.example.driver_service.enums.DriverStatus;
-import org.springframework.data.geo.Circle;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
 import org.springframework.data.geo.Distance;
+import org.springframework.data.geo.GeoResult;
 import org.springframework.data.geo.GeoResults;
 import org.springframework.data.geo.Metrics;
+import org.springframework.data.geo.Point;
 import org.springframework.data.redis.connection.RedisGeoCommands;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
 import org.springframework.stereotype.Repository;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
 @Repository
 public class RedisDriverRepository {
 
     private final RedisTemplate<String, String> redisTemplate;
 
+    public static final String LOCATION_FEED_CHANNEL = "drivers:locations:feed";
+
     private static final String GEO_KEY = "drivers:locations";
+    private static final String ONLINE_GEO_KEY = "drivers:locations:online";
     private static final String DRIVER_HASH_PREFIX = "driver:";
     private static final String DRIVER_STATUS_SUFFIX = ":status";
-
-    public RedisDriverRepository(RedisTemplate<String, String> redisTemplate) {
+    private static final String DRIVER_RESERVED_SUFFIX = ":reserved";
+
+    private static final RedisScript<Long> UPDATE_LOCATIONS_SCRIPT =
+            RedisScript.of(new ClassPathResource("scripts/update_locations.lua"), Long.class);
+    private static final RedisScript<Long> SET_STATUS_SCRIPT =
+            RedisScript.of(new ClassPathResource("scripts/set_status.lua"), Long.class);
+    private static final RedisScript<Long> APPLY_TRIP_EVENTS_SCRIPT =
+            RedisScript.of(new ClassPathResource("scripts/apply_trip_events.lua"), Long.class);
+    private static final RedisScript<List> NEARBY_DRIVERS_SCRIPT =
+            RedisScript.of(new ClassPathResource("scripts/nearby_drivers.lua"), List.class);
+    private static final RedisScript<Long> RESERVE_DRIVER_SCRIPT =
+            RedisScript.of(new ClassPathResource("scripts/reserve_driver.lua"), Long.class);
+    private static final RedisScript<Long> RELEASE_RESERVATION_SCRIPT =
+            RedisScript.of(new ClassPathResource("scripts/release_reservation.lua"), Long.class);
+
+    // Số tài xế quét thêm so với limit, để vẫn đủ kết quả sau khi bỏ các tài xế đang được giữ chỗ
+    private final int nearbyOverfetch;
+
+    // Thời gian giữ version cuối của mỗi (tài xế, trip), phải dài hơn một chuyến đi
+    private final long tripEventGuardTtlSeconds;
+
+    public RedisDriverRepository(RedisTemplate<String, String> redisTemplate,
+                                 @Value("${driver.reservation.nearby-overfetch:3}") int nearbyOverfetch,
+                                 @Value("${driver.trip-events.guard-ttl-seconds:86400}") long tripEventGuardTtlSeconds) {
         this.redisTemplate = redisTemplate;
+        this.nearbyOverfetch = nearbyOverfetch;
+        this.tripEventGuardTtlSeconds = tripEventGuardTtlSeconds;
     }
 
     public void updateLocation(String driverId, double lat, double lng) {
-        redisTemplate.opsForGeo().add(
-                GEO_KEY,
-                new RedisGeoCommands.GeoLocation<>(driverId, new org.springframework.data.geo.Point(lng, lat))
-        );
+        updateLocations(List.of(new DriverLocation(driverId, lat, lng, System.currentTimeMillis())));
+    }
 
-        String driverKey = DRIVER_HASH_PREFIX + driverId;
-        redisTemplate.opsForHash().put(driverKey, "lat", String.valueOf(lat));
-        redisTemplate.opsForHash().put(driverKey, "lng", String.valueOf(lng));
-        redisTemplate.opsForHash().put(driverKey, "updatedAt", String.valueOf(System.currentTimeMillis()));
+    /**
+     * Ghi vị trí của nhiều tài xế trong một round trip (một lần EVALSHA cho cả batch).
+     * Script cập nhật GEO set tổng, hash của tài xế, và GEO set ONLINE nếu tài xế đang online,
+     * rồi publish các vị trí ONLINE lên LOCATION_FEED_CHANNEL cho index local của các pod.
+     * Nếu một tài xế xuất hiện nhiều lần thì chỉ giữ vị trí cuối cùng.
+     */
+    public void updateLocations(Collection<DriverLocation> locations) {
+        if (locations.isEmpty()) {
+            return;
+        }
+
+        Map<String, DriverLocation> latest = new LinkedHashMap<>();
+        for (DriverLocation location : locations) {
+            latest.put(location.getDriverId(), location);
+        }
+
+        // updatedAt là thời điểm nhận vị trí (timestamp của DriverLocation), không phải lúc flush
+        List<String> args = new ArrayList<>(1 + latest.size() * 4);
+        args.add(LOCATION_FEED_CHANNEL);
+        for (DriverLocation l : latest.values()) {
+            args.add(l.getDriverId());
+            args.add(String.valueOf(l.getLongitude()));
+            args.add(String.valueOf(l.getLatitude()));
+            args.add(String.valueOf(l.getTimestamp()));
+        }
+
+        redisTemplate.execute(UPDATE_LOCATIONS_SCRIPT, List.of(GEO_KEY, ONLINE_GEO_KEY), args.toArray());
     }
 
+    /**
+     * Đổi status và chuyển tài xế vào/ra GEO set ONLINE trong cùng một script,
+     * để nearby search không bao giờ thấy tài xế OFFLINE/BUSY.
+     */
     public void setStatus(String driverId, DriverStatus status) {
-        redisTemplate.opsForValue()
-                .set(DRIVER_HASH_PREFIX + driverId + DRIVER_STATUS_SUFFIX, status.name());
+        redisTemplate.execute(
+                SET_STATUS_SCRIPT,
+                List.of(DRIVER_HASH_PREFIX + driverId + DRIVER_STATUS_SUFFIX, GEO_KEY, ONLINE_GEO_KEY),
+                driverId, status.name(), LOCATION_FEED_CHANNEL
+        );
+    }
+
+    /**
+     * Áp dụng cả batch event của trip trong một script: ACCEPTED/IN_PROGRESS → BUSY,
+     * COMPLETED/CANCELLED → ONLINE nếu tài xế đang BUSY. Event của một trip có version không lớn hơn
+     * version cuối đã áp dụng cho (tài xế, trip) đó bị bỏ qua, nên nhận lại cùng event hay event đến trễ
+     * không đổi gì. occurredAt chỉ dùng để xếp thứ tự event của các trip khác nhau trong batch.
+     */
+    public long applyTripEvents(Collection<TripStatusEvent> events) {
+        List<TripStatusEvent> ordered = events.stream()
+                .filter(event -> event.getDriverId() != null && event.getTripId() != null && event.getStatus() != null)
+                .sorted(Comparator.comparingLong(TripStatusEvent::getOccurredAt)
+                        .thenComparingLong(TripStatusEvent::getVersion))
+                .toList();
+        if (ordered.isEmpty()) {
+            return 0;
+        }
+
+        List<String> args = new ArrayList<>(2 + ordered.size() * 4);
+        args.add(LOCATION_FEED_CHANNEL);
+        args.add(String.valueOf(tripEventGuardTtlSeconds));
+        for (TripStatusEvent event : ordered) {
+            args.add(event.getDriverId().toString());
+            args.add(event.getTripId().toString());
+            args.add(event.getStatus());
+            args.add(String.valueOf(event.getVersion()));
+        }
+
+        Long applied = redisTemplate.execute(APPLY_TRIP_EVENTS_SCRIPT, List.of(GEO_KEY, ONLINE_GEO_KEY), args.toArray());
+        return applied != null ? applied : 0;
     }
 
     public String getStatus(String driverId) {
@@ -44,6 +142,29 @@ public class RedisDriverRepository {
                 .get(DRIVER_HASH_PREFIX + driverId + DRIVER_STATUS_SUFFIX);
     }
 
+    /**
+     * Giữ chỗ tài xế cho một trip trong {@code ttlMillis}: trong thời gian đó trip khác không giữ được,
+     * và nearby search (Redis lẫn index local) bỏ qua tài xế này.
+     */
+    public boolean reserve(String driverId, String tripId, long ttlMillis) {
+        Long result = redisTemplate.execute(
+                RESERVE_DRIVER_SCRIPT,
+                List.of(reservationKey(driverId)),
+                tripId, String.valueOf(ttlMillis), driverId, LOCATION_FEED_CHANNEL
+        );
+        return result != null && result == 1;
+    }
+
+    /** Bỏ giữ chỗ, chỉ khi tài xế vẫn đang được giữ cho đúng trip này. */
+    public void releaseReservation(String driverId, String tripId) {
+        redisTemplate.execute(
+                RELEASE_RESERVATION_SCRIPT,
+                List.of(reservationKey(driverId)),
+                tripId, driverId, LOCATION_FEED_CHANNEL
+        );
+    }
+
+    @SuppressWarnings("unchecked")
     public GeoResults<RedisGeoCommands.GeoLocation<String>> findNearbyDrivers(
             double lat,
             double lng,
@@ -51,38 +172,30 @@ public class RedisDriverRepository {
             int limit
     ) {
 
-        // Tạo vòng tròn tìm kiếm
-        Circle within = new Circle(
-                new org.springframework.data.geo.Point(lng, lat),
-                new Distance(radiusKm, Metrics.KILOMETERS)
+        // Chỉ tìm trong GEO set ONLINE và bỏ tài xế đang được giữ chỗ, trong một script
+        List<String> flat = redisTemplate.execute(
+                NEARBY_DRIVERS_SCRIPT,
+                List.of(ONLINE_GEO_KEY),
+                String.valueOf(lng), String.valueOf(lat), String.valueOf(radiusKm),
+                String.valueOf(limit), String.valueOf(limit * nearbyOverfetch)
         );
 
-        RedisGeoCommands.GeoRadiusCommandArgs args =
-                RedisGeoCommands.GeoRadiusCommandArgs.newGeoRadiusArgs()
-                        .includeCoordinates()
-                        .includeDistance()
-                        .sortAscending()
-                        .limit(limit * 3L);  // Lấy nhiều hơn để lọc
-
-        // Lấy tất cả từ GEO
-        GeoResults<RedisGeoCommands.GeoLocation<String>> results = redisTemplate.opsForGeo()
-                .radius(GEO_KEY, within, args);
-
-        // Lọc status
-        assert results != null;
-
-        return new GeoResults<>(
-                results.getContent().stream()
-                        .filter(r -> {
-                            String driverId = r.getContent().getName();
-                            String status = getStatus(driverId);
-
-                            // Nếu status null => coi như offline
-                            return status != null && status.equals(DriverStatus.ONLINE.name());
-                        })
-                        .limit(limit)  // Giữ đúng số lượng limit yêu cầu
-                        .toList()
-        );
+        List<GeoResult<RedisGeoCommands.GeoLocation<String>>> results = new ArrayList<>();
+        if (flat == null) {
+            return new GeoResults<>(results);
+        }
+
+        for (int i = 0; i + 3 < flat.size(); i += 4) {
+            Point point = new Point(Double.parseDouble(flat.get(i + 2)), Double.parseDouble(flat.get(i + 3)));
+            results.add(new GeoResult<>(
+                    new RedisGeoCommands.GeoLocation<>(flat.get(i), point),
+                    new Distance(Double.parseDouble(flat.get(i + 1)), Metrics.KILOMETERS)
+            ));
+        }
+        return new GeoResults<>(results, Metrics.KILOMETERS);
     }
 
+    private static String reservationKey(String driverId) {
+        return DRIVER_HASH_PREFIX + driverId + DRIVER_RESERVED_SUFFIX;
+    }
 }
@@ -0,0 +1,111 @@
+package com.example.driver_service.repository;
+
+import com.example.driver_service.dto.TripNotificationRequest;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Repository;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Batch matching windows, kept in Redis so a trip acked to RabbitMQ is never only in a node's memory:
+ * <ul>
+ *     <li>{@code matching:cells} - SET of geo cells with trips waiting</li>
+ *     <li>{@code matching:window:{cell}} - LIST of the cell's trips, oldest first</li>
+ * </ul>
+ */
+@Repository
+public class RedisMatchingWindowRepository {
+
+    private static final String CELLS_KEY = "matching:cells";
+    private static final String WINDOW_PREFIX = "matching:window:";
+    private static final String LOCK_KEY = "matching:lock";
+
+    private static final RedisScript<Long> TRIM_WINDOW_SCRIPT =
+            RedisScript.of(new ClassPathResource("scripts/matching_window_trim.lua"), Long.class);
+
+    private static final RedisScript<Long> RELEASE_LOCK_SCRIPT =
+            RedisScript.of(new ClassPathResource("scripts/release_lock.lua"), Long.class);
+
+    private final RedisTemplate<String, Object> redisObjectTemplate;
+    private final RedisTemplate<String, String> redisTemplate;
+
+    public RedisMatchingWindowRepository(@Qualifier("redisObjectTemplate") RedisTemplate<String, Object> redisObjectTemplate,
+                                         @Qualifier("redisTemplate") RedisTemplate<String, String> redisTemplate) {
+        this.redisObjectTemplate = redisObjectTemplate;
+        this.redisTemplate = redisTemplate;
+    }
+
+    /** Appends trips to the windows of their cells, in one pipeline. */
+    @SuppressWarnings("unchecked")
+    public void add(Map<Long, List<TripNotificationRequest>> tripsByCell) {
+        if (tripsByCell.isEmpty()) {
+            return;
+        }
+
+        redisObjectTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            public <K, V> Object execute(RedisOperations<K, V> operations) {
+                RedisOperations<String, Object> ops = (RedisOperations<String, Object>) operations;
+
+                tripsByCell.forEach((cell, trips) -> ops.opsForList().rightPushAll(windowKey(cell), trips.toArray()));
+                return null;
+            }
+        });
+
+        // Trips first, then the cell: a concurrent trim never drops a cell that still has trips
+        redisTemplate.opsForSet().add(CELLS_KEY,
+                tripsByCell.keySet().stream().map(String::valueOf).toArray(String[]::new));
+    }
+
+    public Set<Long> findCells() {
+        Set<String> cells = redisTemplate.opsForSet().members(CELLS_KEY);
+        if (cells == null) {
+            return Collections.emptySet();
+        }
+        return cells.stream().map(Long::valueOf).collect(Collectors.toSet());
+    }
+
+    /** The trips waiting in a cell, oldest first; they stay there until {@link #remove}. */
+    public List<TripNotificationRequest> find(long cell) {
+        List<Object> values = redisObjectTemplate.opsForList().range(windowKey(cell), 0, -1);
+        if (values == null) {
+            return Collections.emptyList();
+        }
+
+        List<TripNotificationRequest> trips = new ArrayList<>(values.size());
+        for (Object value : values) {
+            trips.add((TripNotificationRequest) value);
+        }
+        return trips;
+    }
+
+    /** Removes the first {@code count} trips of a cell, once they have been dispatched. */
+    public void remove(long cell, int count) {
+        redisTemplate.execute(TRIM_WINDOW_SCRIPT, List.of(windowKey(cell), CELLS_KEY),
+                String.valueOf(count), String.valueOf(cell));
+    }
+
+    /** Lets only one driver-service replica match the windows at a time. */
+    public boolean tryLock(String owner, Duration ttl) {
+        return Boolean.TRUE.equals(redisTemplate.opsForValue().setIfAbsent(LOCK_KEY, owner, ttl));
+    }
+
+    public void unlock(String owner) {
+        redisTemplate.execute(RELEASE_LOCK_SCRIPT, List.of(LOCK_KEY), owner);
+    }
+
+    private static String windowKey(long cell) {
+        return WINDOW_PREFIX + cell;
+    }
+}
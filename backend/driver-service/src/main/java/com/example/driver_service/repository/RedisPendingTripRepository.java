@@ -0,0 +1,274 @@
+package com.example.driver_service.repository;
+
+import com.example.driver_service.entity.PendingTripNotification;
+import com.example.driver_service.enums.TripAcceptResult;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.stereotype.Repository;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pending trip offers and their secondary indexes, so no operation needs a KEYS scan:
+ * <ul>
+ *     <li>{@code pending_trips:{driverId}:{tripId}} - the offer itself, with TTL</li>
+ *     <li>{@code driver:{driverId}:pending_trips} - ZSET of trip ids offered to a driver, scored by expiry</li>
+ *     <li>{@code trip:{tripId}:notified_drivers} - SET of drivers a trip was offered to</li>
+ *     <li>{@code pending_trips:expiry} - ZSET of {@code driverId:tripId} scored by expiry, for the sweeper</li>
+ *     <li>{@code trip:{tripId}:claim} - the driver that accepted the trip, set once by {@link #claimTrip}</li>
+ * </ul>
+ */
+@Repository
+public class RedisPendingTripRepository {
+
+    private static final String PENDING_TRIPS_KEY = "pending_trips:";
+    private static final String DRIVER_INDEX_PREFIX = "driver:";
+    private static final String DRIVER_INDEX_SUFFIX = ":pending_trips";
+    private static final String TRIP_INDEX_PREFIX = "trip:";
+    private static final String TRIP_INDEX_SUFFIX = ":notified_drivers";
+    private static final String TRIP_CLAIM_SUFFIX = ":claim";
+    private static final String EXPIRY_KEY = "pending_trips:expiry";
+    private static final String SWEEPER_LOCK_KEY = "pending_trips:sweeper:lock";
+
+    private static final RedisScript<Long> ACCEPT_TRIP_SCRIPT =
+            RedisScript.of(new ClassPathResource("scripts/accept_trip.lua"), Long.class);
+
+    private static final RedisScript<Long> RELEASE_LOCK_SCRIPT =
+            RedisScript.of(new ClassPathResource("scripts/release_lock.lua"), Long.class);
+
+    // Indexes outlive the offers a little, so the sweeper still finds them after the offer key expired
+    private static final long INDEX_GRACE_SECONDS = 60;
+
+    private final RedisTemplate<String, PendingTripNotification> pendingTripTemplate;
+    private final RedisTemplate<String, String> redisTemplate;
+
+    public RedisPendingTripRepository(@Qualifier("pendingTripTemplate") RedisTemplate<String, PendingTripNotification> pendingTripTemplate,
+                                      @Qualifier("redisTemplate") RedisTemplate<String, String> redisTemplate) {
+        this.pendingTripTemplate = pendingTripTemplate;
+        this.redisTemplate = redisTemplate;
+    }
+
+    public void saveOffer(String driverId, PendingTripNotification pending, long ttlSeconds) {
+        saveOffers(List.of(new Offer(driverId, pending)), ttlSeconds);
+    }
+
+    /** Writes the offers and all of their index entries in one pipeline. */
+    @SuppressWarnings("unchecked")
+    public void saveOffers(Collection<Offer> offers, long ttlSeconds) {
+        if (offers.isEmpty()) {
+            return;
+        }
+
+        RedisSerializer<PendingTripNotification> valueSerializer =
+                (RedisSerializer<PendingTripNotification>) pendingTripTemplate.getValueSerializer();
+        double expiresAt = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(ttlSeconds);
+        long indexTtlSeconds = ttlSeconds + INDEX_GRACE_SECONDS;
+
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (Offer offer : offers) {
+                String driverId = offer.driverId();
+                String tripId = offer.pending().getTripId().toString();
+                byte[] driverIndex = bytes(driverIndexKey(driverId));
+                byte[] tripIndex = bytes(tripIndexKey(tripId));
+
+                connection.stringCommands().set(bytes(offerKey(driverId, tripId)),
+                        valueSerializer.serialize(offer.pending()),
+                        Expiration.seconds(ttlSeconds), RedisStringCommands.SetOption.upsert());
+
+                connection.zSetCommands().zAdd(driverIndex, expiresAt, bytes(tripId));
+                connection.keyCommands().expire(driverIndex, indexTtlSeconds);
+
+                connection.setCommands().sAdd(tripIndex, bytes(driverId));
+                connection.keyCommands().expire(tripIndex, indexTtlSeconds);
+
+                connection.zSetCommands().zAdd(bytes(EXPIRY_KEY), expiresAt, bytes(driverId + ":" + tripId));
+            }
+            return null;
+        });
+    }
+
+    public Optional<PendingTripNotification> findOffer(UUID driverId, UUID tripId) {
+        return Optional.ofNullable(pendingTripTemplate.opsForValue().get(offerKey(driverId.toString(), tripId.toString())));
+    }
+
+    public void deleteOffer(UUID driverId, UUID tripId) {
+        removeOffers(List.of(driverId + ":" + tripId));
+    }
+
+    /** Any live offer of the trip, whichever driver it was sent to; flagged accepted once the trip is claimed. */
+    public Optional<PendingTripNotification> findAnyOffer(UUID tripId) {
+        String driverId = redisTemplate.opsForSet().randomMember(tripIndexKey(tripId.toString()));
+        if (driverId == null) {
+            return Optional.empty();
+        }
+        PendingTripNotification pending = pendingTripTemplate.opsForValue().get(offerKey(driverId, tripId.toString()));
+        if (pending == null) {
+            return Optional.empty();
+        }
+
+        String claimedBy = redisTemplate.opsForValue().get(claimKey(tripId.toString()));
+        if (claimedBy != null) {
+            pending.setAccepted(true);
+            pending.setAcceptedByDriverId(UUID.fromString(claimedBy));
+        }
+        return Optional.of(pending);
+    }
+
+    /**
+     * Claims the trip for {@code driverId} in one script call: checks the driver still holds a live offer,
+     * sets {@code trip:{tripId}:claim} only if nobody claimed it yet, and removes every competing offer
+     * with its index entries and the reservation of its driver. The winner's offer is kept for {@code claimTtlSeconds}.
+     */
+    public TripAcceptResult claimTrip(UUID tripId, UUID driverId, long claimTtlSeconds) {
+        String trip = tripId.toString();
+        String driver = driverId.toString();
+
+        Long result = redisTemplate.execute(ACCEPT_TRIP_SCRIPT,
+                List.of(offerKey(driver, trip), claimKey(trip), tripIndexKey(trip), EXPIRY_KEY),
+                driver, trip, String.valueOf(claimTtlSeconds), RedisDriverRepository.LOCATION_FEED_CHANNEL);
+
+        if (result == null || result == 0) {
+            return TripAcceptResult.NOT_FOUND;
+        }
+        if (result == 1) {
+            return TripAcceptResult.ACCEPTED;
+        }
+        if (result == 2) {
+            return TripAcceptResult.ALREADY_ACCEPTED;
+        }
+        return TripAcceptResult.TAKEN;
+    }
+
+    /** Live offers for a driver: one ZRANGEBYSCORE on the driver's index and one MGET for the payloads. */
+    public List<PendingTripNotification> findOffersForDriver(UUID driverId) {
+        String driverIndex = driverIndexKey(driverId.toString());
+        long now = System.currentTimeMillis();
+
+        redisTemplate.opsForZSet().removeRangeByScore(driverIndex, Double.NEGATIVE_INFINITY, now);
+        Set<String> tripIds = redisTemplate.opsForZSet().rangeByScore(driverIndex, now, Double.POSITIVE_INFINITY);
+        if (tripIds == null || tripIds.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        List<String> keys = tripIds.stream()
+                .map(tripId -> offerKey(driverId.toString(), tripId))
+                .toList();
+
+        List<PendingTripNotification> values = pendingTripTemplate.opsForValue().multiGet(keys);
+        if (values == null) {
+            return Collections.emptyList();
+        }
+
+        return values.stream()
+                .filter(Objects::nonNull)
+                .toList();
+    }
+
+    /** Deletes every live offer of the trip; returns the drivers that held one. */
+    public List<String> deleteAllOffers(UUID tripId) {
+        Set<String> driverIds = redisTemplate.opsForSet().members(tripIndexKey(tripId.toString()));
+        if (driverIds == null || driverIds.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        List<String> entries = new ArrayList<>(driverIds.size());
+        for (String driverId : driverIds) {
+            entries.add(driverId + ":" + tripId);
+        }
+        removeOffers(entries);
+        return new ArrayList<>(driverIds);
+    }
+
+    /** Whether any driver still holds a live offer of the trip. */
+    public boolean hasLiveOffers(UUID tripId) {
+        Long size = redisTemplate.opsForSet().size(tripIndexKey(tripId.toString()));
+        return size != null && size > 0;
+    }
+
+    /** At most {@code limit} {@code driverId:tripId} entries whose offer expired at or before {@code now}, oldest first. */
+    public Set<String> findExpired(long now, int limit) {
+        Set<String> expired = redisTemplate.opsForZSet()
+                .rangeByScore(EXPIRY_KEY, Double.NEGATIVE_INFINITY, now, 0, limit);
+        return expired != null ? expired : Collections.emptySet();
+    }
+
+    /** Removes {@code driverId:tripId} entries from the offers and all of their indexes, in one pipeline. */
+    @SuppressWarnings("unchecked")
+    public void removeOffers(Collection<String> entries) {
+        if (entries.isEmpty()) {
+            return;
+        }
+
+        redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            public <K, V> Object execute(RedisOperations<K, V> operations) {
+                RedisOperations<String, String> ops = (RedisOperations<String, String>) operations;
+
+                List<String> offerKeys = new ArrayList<>(entries.size());
+                for (String entry : entries) {
+                    int separator = entry.indexOf(':');
+                    String driverId = entry.substring(0, separator);
+                    String tripId = entry.substring(separator + 1);
+
+                    offerKeys.add(offerKey(driverId, tripId));
+                    ops.opsForZSet().remove(driverIndexKey(driverId), tripId);
+                    ops.opsForSet().remove(tripIndexKey(tripId), driverId);
+                }
+
+                ops.delete(offerKeys);
+                ops.opsForZSet().remove(EXPIRY_KEY, entries.toArray());
+                return null;
+            }
+        });
+    }
+
+    /** Lets only one driver-service replica run the expiry sweeper at a time. */
+    public boolean tryLockSweeper(String owner, Duration ttl) {
+        return Boolean.TRUE.equals(redisTemplate.opsForValue().setIfAbsent(SWEEPER_LOCK_KEY, owner, ttl));
+    }
+
+    public void unlockSweeper(String owner) {
+        redisTemplate.execute(RELEASE_LOCK_SCRIPT, List.of(SWEEPER_LOCK_KEY), owner);
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String offerKey(String driverId, String tripId) {
+        return PENDING_TRIPS_KEY + driverId + ":" + tripId;
+    }
+
+    private static String driverIndexKey(String driverId) {
+        return DRIVER_INDEX_PREFIX + driverId + DRIVER_INDEX_SUFFIX;
+    }
+
+    static String tripIndexKey(String tripId) {
+        return TRIP_INDEX_PREFIX + tripId + TRIP_INDEX_SUFFIX;
+    }
+
+    static String claimKey(String tripId) {
+        return TRIP_INDEX_PREFIX + tripId + TRIP_CLAIM_SUFFIX;
+    }
+
+    public record Offer(String driverId, PendingTripNotification pending) {
+    }
+}
@@ -0,0 +1,80 @@
+package com.example.driver_service.repository;
+
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Repository;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Which driver-service node holds a driver's trip offer stream:
+ * {@code driver:{driverId}:offer_node} holds the node id, with a TTL refreshed while the stream is open.
+ * Offers for a driver connected elsewhere are relayed on that node's {@code trip_offers:{nodeId}} channel.
+ */
+@Repository
+public class RedisTripOfferRouteRepository {
+
+    private static final String DRIVER_PREFIX = "driver:";
+    private static final String OFFER_NODE_SUFFIX = ":offer_node";
+    private static final String RELAY_CHANNEL_PREFIX = "trip_offers:";
+
+    private static final RedisScript<Long> RELEASE_LOCK_SCRIPT =
+            RedisScript.of(new ClassPathResource("scripts/release_lock.lua"), Long.class);
+
+    private final RedisTemplate<String, String> redisTemplate;
+
+    public RedisTripOfferRouteRepository(@Qualifier("redisTemplate") RedisTemplate<String, String> redisTemplate) {
+        this.redisTemplate = redisTemplate;
+    }
+
+    public static String relayChannel(String nodeId) {
+        return RELAY_CHANNEL_PREFIX + nodeId;
+    }
+
+    public void register(String driverId, String nodeId, Duration ttl) {
+        redisTemplate.opsForValue().set(nodeKey(driverId), nodeId, ttl);
+    }
+
+    /** Re-asserts every given driver on this node in one pipeline. */
+    @SuppressWarnings("unchecked")
+    public void refresh(Collection<String> driverIds, String nodeId, Duration ttl) {
+        if (driverIds.isEmpty()) {
+            return;
+        }
+
+        redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            public <K, V> Object execute(RedisOperations<K, V> operations) {
+                RedisOperations<String, String> ops = (RedisOperations<String, String>) operations;
+                for (String driverId : driverIds) {
+                    ops.opsForValue().set(nodeKey(driverId), nodeId, ttl);
+                }
+                return null;
+            }
+        });
+    }
+
+    /** Removes the route only if it still points at this node; the driver may have reconnected elsewhere. */
+    public void unregister(String driverId, String nodeId) {
+        redisTemplate.execute(RELEASE_LOCK_SCRIPT, List.of(nodeKey(driverId)), nodeId);
+    }
+
+    public Optional<String> findNode(String driverId) {
+        return Optional.ofNullable(redisTemplate.opsForValue().get(nodeKey(driverId)));
+    }
+
+    public void relay(String nodeId, String payload) {
+        redisTemplate.convertAndSend(relayChannel(nodeId), payload);
+    }
+
+    private static String nodeKey(String driverId) {
+        return DRIVER_PREFIX + driverId + OFFER_NODE_SUFFIX;
+    }
+}
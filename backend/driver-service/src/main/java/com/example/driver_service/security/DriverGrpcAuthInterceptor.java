@@ -0,0 +1,75 @@
+package com.example.driver_service.security;
+
+import com.example.driver_service.client.UserClient;
+import com.example.driver_service.dto.UserValidationResponse;
+import com.example.driver_service.grpc.TripOfferServiceGrpc;
+import io.grpc.Context;
+import io.grpc.Contexts;
+import io.grpc.Metadata;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.ServerInterceptor;
+import io.grpc.Status;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.grpc.server.GlobalServerInterceptor;
+import org.springframework.stereotype.Component;
+
+import java.util.Objects;
+import java.util.UUID;
+
+/**
+ * gRPC counterpart of {@link AuthFilter} for {@code TripOfferService}: the call must carry
+ * {@code authorization: Bearer <token>} metadata of a driver, whose id is then available
+ * through {@link #DRIVER_ID} for the rest of the call.
+ */
+@Component
+@GlobalServerInterceptor
+@Slf4j
+public class DriverGrpcAuthInterceptor implements ServerInterceptor {
+
+    public static final Context.Key<UUID> DRIVER_ID = Context.key("driverId");
+
+    private static final Metadata.Key<String> AUTHORIZATION =
+            Metadata.Key.of("authorization", Metadata.ASCII_STRING_MARSHALLER);
+
+    private final UserClient userClient;
+
+    public DriverGrpcAuthInterceptor(UserClient userClient) {
+        this.userClient = userClient;
+    }
+
+    @Override
+    public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(ServerCall<ReqT, RespT> call,
+                                                                 Metadata headers,
+                                                                 ServerCallHandler<ReqT, RespT> next) {
+        // Chỉ stream offer cần xác thực; stream vị trí giữ nguyên như cũ
+        if (!TripOfferServiceGrpc.SERVICE_NAME.equals(call.getMethodDescriptor().getServiceName())) {
+            return next.startCall(call, headers);
+        }
+
+        UUID driverId = authenticate(headers.get(AUTHORIZATION));
+        if (driverId == null) {
+            call.close(Status.UNAUTHENTICATED.withDescription("User not authenticated or does not have DRIVER role"),
+                    new Metadata());
+            return new ServerCall.Listener<>() { };
+        }
+
+        return Contexts.interceptCall(Context.current().withValue(DRIVER_ID, driverId), call, headers, next);
+    }
+
+    private UUID authenticate(String token) {
+        if (token == null || !token.startsWith("Bearer ")) {
+            return null;
+        }
+
+        try {
+            UserValidationResponse res = userClient.validate(token.substring(7));
+            if (res != null && res.isValid() && Objects.equals(res.getRole(), "ROLE_DRIVER")) {
+                return res.getUserId();
+            }
+        } catch (Exception e) {
+            log.warn("Invalid JWT Token on gRPC call: {}", e.getMessage());
+        }
+        return null;
+    }
+}
@@ -0,0 +1,345 @@
+package com.example.driver_service.service;
+
+import com.example.driver_service.dto.MatchingBenchmarkResponse;
+import com.example.driver_service.dto.NearbyDriverResponse;
+import com.example.driver_service.dto.TripNotificationRequest;
+import com.example.driver_service.repository.RedisMatchingWindowRepository;
+import com.example.driver_service.utils.GeoUtils;
+import com.example.driver_service.utils.HungarianSolver;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Batch matching for the regions listed in {@code driver.matching.batch-regions}.
+ * <p>
+ * Trips are collected per geo cell for {@code driver.matching.window-ms}; each window solves a min-cost
+ * assignment (pickup distance) between its trips and the nearby ONLINE drivers instead of giving every trip
+ * whoever is nearest when it arrives. Each trip is then dispatched with its assigned driver first, so the
+ * usual cascade still applies on decline or timeout. Other regions keep the greedy path.
+ * <p>
+ * Windows live in Redis ({@link RedisMatchingWindowRepository}), so a trip acked to RabbitMQ survives a crash.
+ * One node at a time matches them, and a window's trips are removed only after they were handed to
+ * {@link DispatchService#start}; a trip dispatched twice after a crash in between is ignored the second time.
+ */
+@Service
+@Slf4j
+public class BatchMatchingService {
+
+    // Cùng ranh giới với shard VN/TH của trip-service
+    private static final double VN_MIN_LONGITUDE = 102.0;
+
+    // Hungarian là O(n³): giới hạn kích thước benchmark để một request không chiếm CPU quá lâu
+    private static final int MAX_BENCHMARK_SIZE = 500;
+
+    private final DispatchService dispatchService;
+    private final DriverLocationService driverLocationService;
+    private final RedisMatchingWindowRepository windowRepository;
+
+    private final Set<String> batchRegions;
+    private final double cellSizeDeg;
+    private final double radiusKm;
+    private final int candidatesPerTrip;
+    private final long lockTtlMillis;
+
+    private final String instanceId = UUID.randomUUID().toString();
+
+    private final DistributionSummary windowSize;
+    private final DistributionSummary assignedPickupMeters;
+
+    public BatchMatchingService(DispatchService dispatchService,
+                                DriverLocationService driverLocationService,
+                                RedisMatchingWindowRepository windowRepository,
+                                MeterRegistry meterRegistry,
+                                @Value("${driver.matching.batch-regions:}") String[] batchRegions,
+                                @Value("${driver.matching.cell-size-deg:0.05}") double cellSizeDeg,
+                                @Value("${driver.matching.radius-km:3.0}") double radiusKm,
+                                @Value("${driver.matching.candidates-per-trip:10}") int candidatesPerTrip,
+                                @Value("${driver.matching.lock-ttl-ms:10000}") long lockTtlMillis) {
+        this.dispatchService = dispatchService;
+        this.driverLocationService = driverLocationService;
+        this.windowRepository = windowRepository;
+        this.batchRegions = new HashSet<>(Arrays.asList(batchRegions));
+        this.cellSizeDeg = cellSizeDeg;
+        this.radiusKm = radiusKm;
+        this.candidatesPerTrip = candidatesPerTrip;
+        this.lockTtlMillis = lockTtlMillis;
+        this.windowSize = DistributionSummary.builder("driver.matching.window.size").register(meterRegistry);
+        this.assignedPickupMeters = DistributionSummary.builder("driver.matching.pickup.meters")
+                .tag("mode", "batch")
+                .register(meterRegistry);
+    }
+
+    public boolean isBatchRegion(TripNotificationRequest trip) {
+        return trip.getPickupLatitude() != null && trip.getPickupLongitude() != null
+                && batchRegions.contains(regionOf(trip.getPickupLongitude()));
+    }
+
+    /** Adds trips to the Redis windows of their cells; once this returns they may be acked. */
+    public void enqueue(List<TripNotificationRequest> trips) {
+        Map<Long, List<TripNotificationRequest>> tripsByCell = new HashMap<>();
+        for (TripNotificationRequest trip : trips) {
+            long cell = cellKey(trip.getPickupLatitude(), trip.getPickupLongitude());
+            tripsByCell.computeIfAbsent(cell, key -> new ArrayList<>()).add(trip);
+        }
+        windowRepository.add(tripsByCell);
+    }
+
+    @Scheduled(fixedDelayString = "${driver.matching.window-ms:1000}")
+    public void matchWindows() {
+        // One replica at a time; the others skip this window
+        if (!windowRepository.tryLock(instanceId, Duration.ofMillis(lockTtlMillis))) {
+            return;
+        }
+
+        try {
+            List<TripNotificationRequest> matched = new ArrayList<>();
+            Map<Long, Integer> taken = new HashMap<>();
+
+            for (Long cell : windowRepository.findCells()) {
+                List<TripNotificationRequest> trips = windowRepository.find(cell);
+                taken.put(cell, trips.size());
+                if (trips.isEmpty()) {
+                    continue;
+                }
+                try {
+                    matched.addAll(match(trips));
+                } catch (Exception e) {
+                    // Không để mất trip: dispatch theo danh sách gốc từ trip-service
+                    log.error("Batch matching failed for {} trips, falling back to greedy: {}", trips.size(), e.getMessage(), e);
+                    matched.addAll(trips);
+                }
+            }
+
+            if (!matched.isEmpty()) {
+                dispatchService.start(matched);
+            }
+
+            // Chỉ xoá khỏi window sau khi dispatch đã bắt đầu; lỗi trước đó thì window sau thử lại
+            taken.forEach(windowRepository::remove);
+        } finally {
+            windowRepository.unlock(instanceId);
+        }
+    }
+
+    /** Reorders each trip's candidates so that the driver from the window's optimal assignment comes first. */
+    List<TripNotificationRequest> match(List<TripNotificationRequest> trips) {
+        windowSize.record(trips.size());
+
+        List<List<NearbyDriverResponse>> candidates = new ArrayList<>(trips.size());
+        Map<String, Integer> driverColumns = new LinkedHashMap<>();
+        for (TripNotificationRequest trip : trips) {
+            List<NearbyDriverResponse> nearby = driverLocationService.findNearbyDrivers(
+                    trip.getPickupLatitude(), trip.getPickupLongitude(), radiusKm, candidatesPerTrip);
+            candidates.add(nearby);
+            for (NearbyDriverResponse driver : nearby) {
+                driverColumns.putIfAbsent(driver.getDriverId(), driverColumns.size());
+            }
+        }
+
+        List<String> drivers = new ArrayList<>(driverColumns.keySet());
+        double[][] cost = new double[trips.size()][drivers.size()];
+        for (int i = 0; i < trips.size(); i++) {
+            Arrays.fill(cost[i], HungarianSolver.UNREACHABLE);
+            for (NearbyDriverResponse driver : candidates.get(i)) {
+                cost[i][driverColumns.get(driver.getDriverId())] = driver.getDistanceInMeters();
+            }
+        }
+
+        int[] assignment = HungarianSolver.solve(cost);
+
+        Set<String> assigned = new HashSet<>();
+        for (int i = 0; i < trips.size(); i++) {
+            if (assignment[i] >= 0 && cost[i][assignment[i]] < HungarianSolver.UNREACHABLE) {
+                assigned.add(drivers.get(assignment[i]));
+            }
+        }
+
+        for (int i = 0; i < trips.size(); i++) {
+            TripNotificationRequest trip = trips.get(i);
+            if (candidates.get(i).isEmpty()) {
+                continue; // keep trip-service's list; dispatch widens the search if it is empty too
+            }
+
+            List<String> ordered = new ArrayList<>();
+            boolean hasAssignment = assignment[i] >= 0 && cost[i][assignment[i]] < HungarianSolver.UNREACHABLE;
+            if (hasAssignment) {
+                ordered.add(drivers.get(assignment[i]));
+                assignedPickupMeters.record(cost[i][assignment[i]]);
+            }
+            // Then the remaining candidates by distance, drivers assigned to other trips of the window last
+            List<NearbyDriverResponse> rest = new ArrayList<>(candidates.get(i));
+            rest.sort(Comparator.comparing((NearbyDriverResponse d) -> assigned.contains(d.getDriverId()))
+                    .thenComparingDouble(NearbyDriverResponse::getDistanceInMeters));
+            for (NearbyDriverResponse driver : rest) {
+                if (!ordered.contains(driver.getDriverId())) {
+                    ordered.add(driver.getDriverId());
+                }
+            }
+            trip.setNearbyDriverIds(ordered);
+        }
+
+        log.info("Batch matched {} trips against {} drivers: {} assigned", trips.size(), drivers.size(), assigned.size());
+        return trips;
+    }
+
+    /**
+     * Compares greedy nearest-driver matching with batch assignment on the same load: {@code trips} random
+     * pickups within {@code radiusKm} of the given point, against the ONLINE drivers found there (e.g. fed by
+     * driver-simulator), or {@code drivers} random positions when none are online. Only the matching itself
+     * is timed; Redis and offers are not involved.
+     */
+    public MatchingBenchmarkResponse benchmark(double lat, double lng, double areaRadiusKm,
+                                               int tripCount, int driverCount, long seed) {
+        tripCount = Math.max(0, Math.min(tripCount, MAX_BENCHMARK_SIZE));
+        driverCount = Math.max(0, Math.min(driverCount, MAX_BENCHMARK_SIZE));
+        Random random = new Random(seed);
+
+        List<double[]> pickups = new ArrayList<>(tripCount);
+        for (int i = 0; i < tripCount; i++) {
+            pickups.add(randomPoint(random, lat, lng, areaRadiusKm));
+        }
+
+        String source = "live";
+        List<double[]> drivers = new ArrayList<>();
+        for (NearbyDriverResponse driver : driverLocationService.findNearbyDrivers(lat, lng, areaRadiusKm, driverCount)) {
+            drivers.add(new double[]{driver.getLatitude(), driver.getLongitude()});
+        }
+        if (drivers.isEmpty()) {
+            source = "synthetic";
+            for (int i = 0; i < driverCount; i++) {
+                drivers.add(randomPoint(random, lat, lng, areaRadiusKm));
+            }
+        }
+
+        double radiusMeters = radiusKm * 1000;
+
+        // Greedy: trips in arrival order, each takes the nearest free driver
+        long greedyStart = System.nanoTime();
+        boolean[] taken = new boolean[drivers.size()];
+        int greedyMatched = 0;
+        double greedyTotal = 0;
+        for (double[] pickup : pickups) {
+            int best = -1;
+            double bestDistance = radiusMeters;
+            for (int j = 0; j < drivers.size(); j++) {
+                if (taken[j]) {
+                    continue;
+                }
+                double distance = GeoUtils.distanceMeters(pickup[0], pickup[1], drivers.get(j)[0], drivers.get(j)[1]);
+                if (distance <= bestDistance) {
+                    best = j;
+                    bestDistance = distance;
+                }
+            }
+            if (best >= 0) {
+                taken[best] = true;
+                greedyMatched++;
+                greedyTotal += bestDistance;
+            }
+        }
+        long greedyNanos = System.nanoTime() - greedyStart;
+
+        // Batch: one assignment per geo cell, on the same sparse candidate lists as matchWindows()
+        long batchStart = System.nanoTime();
+        Map<Long, List<Integer>> cells = new HashMap<>();
+        for (int i = 0; i < pickups.size(); i++) {
+            cells.computeIfAbsent(cellKey(pickups.get(i)[0], pickups.get(i)[1]), k -> new ArrayList<>()).add(i);
+        }
+
+        boolean[] used = new boolean[drivers.size()];
+        int batchMatched = 0;
+        double batchTotal = 0;
+        for (List<Integer> cellTrips : cells.values()) {
+            Map<Integer, Integer> columns = new LinkedHashMap<>();
+            List<Map<Integer, Double>> edges = new ArrayList<>();
+            for (int trip : cellTrips) {
+                double[] pickup = pickups.get(trip);
+                List<double[]> nearest = new ArrayList<>();
+                for (int j = 0; j < drivers.size(); j++) {
+                    if (used[j]) {
+                        continue;
+                    }
+                    double distance = GeoUtils.distanceMeters(pickup[0], pickup[1], drivers.get(j)[0], drivers.get(j)[1]);
+                    if (distance <= radiusMeters) {
+                        nearest.add(new double[]{j, distance});
+                    }
+                }
+                nearest.sort(Comparator.comparingDouble(e -> e[1]));
+
+                Map<Integer, Double> tripEdges = new HashMap<>();
+                for (double[] edge : nearest.subList(0, Math.min(candidatesPerTrip, nearest.size()))) {
+                    columns.putIfAbsent((int) edge[0], columns.size());
+                    tripEdges.put((int) edge[0], edge[1]);
+                }
+                edges.add(tripEdges);
+            }
+
+            List<Integer> columnDrivers = new ArrayList<>(columns.keySet());
+            double[][] cost = new double[cellTrips.size()][columnDrivers.size()];
+            for (int i = 0; i < cellTrips.size(); i++) {
+                Arrays.fill(cost[i], HungarianSolver.UNREACHABLE);
+                for (Map.Entry<Integer, Double> edge : edges.get(i).entrySet()) {
+                    cost[i][columns.get(edge.getKey())] = edge.getValue();
+                }
+            }
+
+            int[] assignment = HungarianSolver.solve(cost);
+            for (int i = 0; i < assignment.length; i++) {
+                if (assignment[i] >= 0 && cost[i][assignment[i]] < HungarianSolver.UNREACHABLE) {
+                    used[columnDrivers.get(assignment[i])] = true;
+                    batchMatched++;
+                    batchTotal += cost[i][assignment[i]];
+                }
+            }
+        }
+        long batchNanos = System.nanoTime() - batchStart;
+
+        return MatchingBenchmarkResponse.builder()
+                .trips(tripCount)
+                .drivers(drivers.size())
+                .driverSource(source)
+                .greedyMatched(greedyMatched)
+                .greedyTotalPickupMeters(greedyTotal)
+                .greedyTripsPerSecond(tripCount / Math.max(greedyNanos / 1e9, 1e-9))
+                .batchMatched(batchMatched)
+                .batchTotalPickupMeters(batchTotal)
+                .batchTripsPerSecond(tripCount / Math.max(batchNanos / 1e9, 1e-9))
+                .build();
+    }
+
+    private static String regionOf(double longitude) {
+        return longitude >= VN_MIN_LONGITUDE ? "VN" : "TH";
+    }
+
+    private long cellKey(double lat, double lng) {
+        long row = (long) Math.floor(lat / cellSizeDeg);
+        long col = (long) Math.floor(lng / cellSizeDeg);
+        return (row << 32) | (col & 0xffffffffL);
+    }
+
+    // Uniform point in a disc around (lat, lng)
+    private static double[] randomPoint(Random random, double lat, double lng, double radiusKm) {
+        double distanceKm = radiusKm * Math.sqrt(random.nextDouble());
+        double bearing = random.nextDouble() * 2 * Math.PI;
+        double dLat = distanceKm * Math.cos(bearing) / 111.0;
+        double dLng = distanceKm * Math.sin(bearing) / (111.0 * Math.cos(Math.toRadians(lat)));
+        return new double[]{lat + dLat, lng + dLng};
+    }
+}
@@ -0,0 +1,277 @@
+package com.example.driver_service.service;
+
+import com.example.driver_service.client.TripClient;
+import com.example.driver_service.dto.NearbyDriverResponse;
+import com.example.driver_service.dto.TripNotificationRequest;
+import com.example.driver_service.entity.PendingTripNotification;
+import com.example.driver_service.repository.RedisDispatchRepository;
+import com.example.driver_service.repository.RedisDriverRepository;
+import com.example.driver_service.repository.RedisPendingTripRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Owns the candidate list of each trip and cascades offers until one driver accepts.
+ * <p>
+ * At most {@code driver.dispatch.parallel-offers} offers of a trip are live at once; the first accept wins
+ * (see {@link RedisPendingTripRepository#claimTrip}). A decline or an expired offer frees its slot and the
+ * next candidate is offered right away. When the candidates run out, the search radius is widened through
+ * {@code driver.dispatch.radius-km}, one round at a time.
+ * <p>
+ * A driver is reserved for the trip in the same script call that selects it, for as long as the offer lives,
+ * so concurrent trips never offer the same driver and nearby searches skip it meanwhile. A trip whose remaining
+ * candidates are all reserved waits for the first reservation to expire instead of widening.
+ * <p>
+ * A trip that runs out of rounds is reported to trip-service, which cancels it.
+ */
+@Service
+@Slf4j
+public class DispatchService {
+
+    private final RedisDispatchRepository dispatchRepository;
+    private final RedisPendingTripRepository pendingTripRepository;
+    private final RedisDriverRepository redisDriverRepository;
+    private final DriverLocationService driverLocationService;
+    private final TripOfferPublisher tripOfferPublisher;
+    private final TripClient tripClient;
+
+    private final long offerTimeoutSeconds;
+    private final int parallelOffers;
+    private final double[] radiusKm;
+    private final int candidatesPerRound;
+    private final long stateTtlSeconds;
+
+    private final Timer timeToMatch;
+    private final Counter failedDispatches;
+
+    public DispatchService(RedisDispatchRepository dispatchRepository,
+                           RedisPendingTripRepository pendingTripRepository,
+                           RedisDriverRepository redisDriverRepository,
+                           DriverLocationService driverLocationService,
+                           TripOfferPublisher tripOfferPublisher,
+                           TripClient tripClient,
+                           MeterRegistry meterRegistry,
+                           @Value("${driver.dispatch.offer-timeout-seconds:15}") long offerTimeoutSeconds,
+                           @Value("${driver.dispatch.parallel-offers:1}") int parallelOffers,
+                           @Value("${driver.dispatch.radius-km:3.0,5.0,8.0}") double[] radiusKm,
+                           @Value("${driver.dispatch.candidates-per-round:10}") int candidatesPerRound,
+                           @Value("${driver.dispatch.state-ttl-seconds:600}") long stateTtlSeconds) {
+        this.dispatchRepository = dispatchRepository;
+        this.pendingTripRepository = pendingTripRepository;
+        this.redisDriverRepository = redisDriverRepository;
+        this.driverLocationService = driverLocationService;
+        this.tripOfferPublisher = tripOfferPublisher;
+        this.tripClient = tripClient;
+        this.offerTimeoutSeconds = offerTimeoutSeconds;
+        this.parallelOffers = parallelOffers;
+        this.radiusKm = radiusKm;
+        this.candidatesPerRound = candidatesPerRound;
+        this.stateTtlSeconds = stateTtlSeconds;
+        this.timeToMatch = Timer.builder("driver.dispatch.time_to_match")
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry);
+        this.failedDispatches = meterRegistry.counter("driver.dispatch.failed");
+    }
+
+    /**
+     * Starts dispatching new trips. {@code nearbyDriverIds} of each trip, nearest first, are its first-round
+     * candidates; the first offers of all trips are stored in one pipeline.
+     */
+    public void start(List<TripNotificationRequest> trips) {
+        List<RedisPendingTripRepository.Offer> offers = new ArrayList<>();
+
+        for (TripNotificationRequest trip : trips) {
+            List<String> candidates = trip.getNearbyDriverIds() != null
+                    ? trip.getNearbyDriverIds() : Collections.emptyList();
+            if (!dispatchRepository.create(trip, candidates, stateTtlSeconds)) {
+                // Message giao lại: dispatch đang chạy, không offer thêm lần nữa
+                log.info("Dispatch already running for trip {}, ignoring redelivery", trip.getTripId());
+                continue;
+            }
+
+            List<String> drivers = nextDrivers(trip.getTripId());
+            offers.addAll(toOffers(trip, drivers));
+            log.info("Dispatch started for trip {}: {} candidates, offered to {}",
+                    trip.getTripId(), candidates.size(), drivers);
+        }
+
+        send(offers);
+    }
+
+    /** Fills the free offer slots of a trip after a decline or an expired offer. */
+    public void advance(UUID tripId) {
+        List<String> drivers = nextDrivers(tripId);
+        if (drivers.isEmpty()) {
+            return;
+        }
+
+        dispatchRepository.find(tripId).ifPresent(state -> {
+            send(toOffers(state.trip(), drivers));
+            log.info("Trip {} re-offered to {} (round {})", tripId, drivers, state.round());
+        });
+    }
+
+    /** Tries again the trips that were waiting for reserved candidates; returns how many were due. */
+    public int retryReserved(long now, int limit) {
+        List<UUID> tripIds = dispatchRepository.takeDueRetries(now, limit);
+        for (UUID tripId : tripIds) {
+            try {
+                advance(tripId);
+            } catch (Exception e) {
+                log.error("Failed to retry dispatch of trip {}: {}", tripId, e.getMessage(), e);
+            }
+        }
+        return tripIds.size();
+    }
+
+    /** Frees the driver and its offer slot, and offers the trip to the next candidate. */
+    public void onDeclined(UUID tripId, UUID driverId) {
+        pendingTripRepository.deleteOffer(driverId, tripId);
+        redisDriverRepository.releaseReservation(driverId.toString(), tripId.toString());
+        advance(tripId);
+    }
+
+    /** Stops the dispatch of a cancelled trip: no further offers, live offers withdrawn, drivers released. */
+    public void onCancelled(UUID tripId) {
+        dispatchRepository.finish(tripId, RedisDispatchRepository.CANCELLED);
+        List<String> drivers = pendingTripRepository.deleteAllOffers(tripId);
+        for (String driverId : drivers) {
+            redisDriverRepository.releaseReservation(driverId, tripId.toString());
+        }
+        if (!drivers.isEmpty()) {
+            log.info("Trip {} cancelled, withdrew offers from {}", tripId, drivers);
+        }
+    }
+
+    /** Stops the dispatch of an accepted trip and records its time-to-match. */
+    public void onAccepted(UUID tripId) {
+        dispatchRepository.find(tripId).ifPresent(state -> {
+            if (dispatchRepository.finish(tripId, RedisDispatchRepository.MATCHED) && state.startedAt() > 0) {
+                timeToMatch.record(Duration.ofMillis(System.currentTimeMillis() - state.startedAt()));
+            }
+        });
+    }
+
+    private List<String> nextDrivers(UUID tripId) {
+        while (true) {
+            List<String> result = dispatchRepository.next(tripId, parallelOffers,
+                    TimeUnit.SECONDS.toMillis(offerTimeoutSeconds));
+            switch (result.get(0)) {
+                case "OFFER" -> {
+                    return result.subList(1, result.size());
+                }
+                case "RESERVED" -> {
+                    long retryInMillis = Long.parseLong(result.get(1));
+                    dispatchRepository.scheduleRetry(tripId, System.currentTimeMillis() + retryInMillis);
+                    log.info("Candidates of trip {} are reserved by other trips, retrying in {} ms", tripId, retryInMillis);
+                    return Collections.emptyList();
+                }
+                case "EXHAUSTED" -> {
+                    if (!widen(tripId)) {
+                        return Collections.emptyList();
+                    }
+                }
+                default -> {
+                    return Collections.emptyList();
+                }
+            }
+        }
+    }
+
+    // Adds the candidates of the next non-empty search round; false once every round has been used
+    private boolean widen(UUID tripId) {
+        RedisDispatchRepository.DispatchState state = dispatchRepository.find(tripId).orElse(null);
+        if (state == null || state.trip().getPickupLatitude() == null || state.trip().getPickupLongitude() == null) {
+            return false;
+        }
+
+        for (int round = state.round() + 1; round < radiusKm.length; round++) {
+            List<String> candidates = driverLocationService.findNearbyDrivers(
+                            state.trip().getPickupLatitude(),
+                            state.trip().getPickupLongitude(),
+                            radiusKm[round],
+                            candidatesPerRound
+                    ).stream()
+                    .map(NearbyDriverResponse::getDriverId)
+                    .toList();
+
+            dispatchRepository.addCandidates(tripId, round, candidates, stateTtlSeconds);
+            if (!candidates.isEmpty()) {
+                log.info("Trip {} search widened to {} km: {} candidates", tripId, radiusKm[round], candidates.size());
+                return true;
+            }
+        }
+
+        // Offers still live may yet be accepted; fail only when nothing is left
+        if (!pendingTripRepository.hasLiveOffers(tripId) && dispatchRepository.finish(tripId, RedisDispatchRepository.FAILED)) {
+            failedDispatches.increment();
+            log.warn("No driver found for trip {} within {} km", tripId, radiusKm[radiusKm.length - 1]);
+            reportFailed(tripId);
+        }
+        return false;
+    }
+
+    // Không báo thì trip nằm ở SEARCHING_DRIVER mãi mãi
+    private void reportFailed(UUID tripId) {
+        try {
+            tripClient.expireTrip(tripId);
+        } catch (Exception e) {
+            log.error("Failed to report failed dispatch to trip-service: tripId={}, error={}",
+                    tripId, e.getMessage(), e);
+        }
+    }
+
+    private List<RedisPendingTripRepository.Offer> toOffers(TripNotificationRequest trip, List<String> driverIds) {
+        LocalDateTime now = LocalDateTime.now();
+        List<RedisPendingTripRepository.Offer> offers = new ArrayList<>(driverIds.size());
+        for (String driverId : driverIds) {
+            PendingTripNotification pending = PendingTripNotification.builder()
+                    .tripId(trip.getTripId())
+                    .passengerId(trip.getPassengerId())
+                    .passengerName(trip.getPassengerName())
+                    .pickupLatitude(trip.getPickupLatitude())
+                    .pickupLongitude(trip.getPickupLongitude())
+                    .destinationLatitude(trip.getDestinationLatitude())
+                    .destinationLongitude(trip.getDestinationLongitude())
+                    .estimatedFare(trip.getEstimatedFare())
+                    .distanceKm(trip.getDistanceKm())
+                    .notifiedAt(now)
+                    .expiresAt(now.plusSeconds(offerTimeoutSeconds))
+                    .expired(false)
+                    .accepted(false)
+                    .build();
+            offers.add(new RedisPendingTripRepository.Offer(driverId, pending));
+        }
+        return offers;
+    }
+
+    private void send(List<RedisPendingTripRepository.Offer> offers) {
+        if (offers.isEmpty()) {
+            return;
+        }
+
+        pendingTripRepository.saveOffers(offers, offerTimeoutSeconds);
+
+        // Push ngay cho tài xế đang subscribe stream; nếu không, tài xế vẫn poll được offer đã lưu
+        for (RedisPendingTripRepository.Offer offer : offers) {
+            try {
+                tripOfferPublisher.push(offer.driverId(), TripOfferPublisher.toTripOffer(offer.pending()));
+            } catch (Exception e) {
+                log.warn("Failed to push trip offer to driver {}: tripId={}, error={}",
+                        offer.driverId(), offer.pending().getTripId(), e.getMessage());
+            }
+        }
+    }
+}
@@ -1,7 +1,12 @@
 package com.example.driver_service.service;
 
 import com.example.driver_service.dto.NearbyDriverResponse;
+import com.example.driver_service.entity.DriverLocation;
+import com.example.driver_service.repository.DriverGridIndex;
 import com.example.driver_service.repository.RedisDriverRepository;
+import com.example.driver_service.utils.GeoUtils;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.data.geo.GeoResult;
 import org.springframework.data.geo.GeoResults;
 import org.springframework.data.geo.Point;
@@ -16,12 +21,70 @@ public class DriverLocationService {
 
     private final RedisDriverRepository redisDriverRepository;
 
-    public DriverLocationService(RedisDriverRepository redisDriverRepository) {
+    private final LocationWriteBuffer locationWriteBuffer;
+
+    private final DriverGridIndex driverGridIndex;
+
+    private final LocationCoalescer locationCoalescer;
+
+    private final Counter localIndexHits;
+
+    private final Counter localIndexFallbacks;
+
+    private final Counter rejected;
+
+    public DriverLocationService(RedisDriverRepository redisDriverRepository,
+                                 LocationWriteBuffer locationWriteBuffer,
+                                 DriverGridIndex driverGridIndex,
+                                 LocationCoalescer locationCoalescer,
+                                 MeterRegistry meterRegistry) {
         this.redisDriverRepository = redisDriverRepository;
+        this.locationWriteBuffer = locationWriteBuffer;
+        this.driverGridIndex = driverGridIndex;
+        this.locationCoalescer = locationCoalescer;
+        this.localIndexHits = meterRegistry.counter("driver.nearby.lookups", "source", "local");
+        this.localIndexFallbacks = meterRegistry.counter("driver.nearby.lookups", "source", "redis");
+        this.rejected = meterRegistry.counter("driver.location.rejected");
     }
 
     public void updateDriverLocation(String driverId, double latitude, double longitude) {
-        redisDriverRepository.updateLocation(driverId, latitude, longitude);
+        updateDriverLocation(driverId, latitude, longitude, null);
+    }
+
+    /**
+     * {@code completion} (may be null) is called once the update is reflected in Redis:
+     * right away if it was coalesced, otherwise after the flush that wrote it.
+     */
+    public void updateDriverLocation(String driverId, double latitude, double longitude,
+                                     LocationWriteBuffer.Completion completion) {
+        // Một tọa độ sai làm GEOADD lỗi và hỏng cả batch, nên loại ngay từ đây
+        if (!GeoUtils.isValidPosition(latitude, longitude)) {
+            rejected.increment();
+            if (completion != null) {
+                completion.onComplete(false);
+            }
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        driverGridIndex.refresh(driverId, latitude, longitude);
+
+        // Bỏ qua các điểm gần như đứng yên, trừ khi đã tới heartbeat
+        if (!locationCoalescer.shouldWrite(driverId, latitude, longitude, now)) {
+            if (completion != null) {
+                completion.onComplete(true);
+            }
+            return;
+        }
+        locationWriteBuffer.enqueue(new DriverLocation(driverId, latitude, longitude, now), applied -> {
+            // Chỉ ghi nhận vị trí khi Redis đã lưu, để flush lỗi không làm lệch coalescing
+            if (applied) {
+                locationCoalescer.recordWrite(driverId, latitude, longitude, now);
+            }
+            if (completion != null) {
+                completion.onComplete(applied);
+            }
+        });
     }
 
     public List<NearbyDriverResponse> findNearbyDrivers(
@@ -31,6 +94,16 @@ public class DriverLocationService {
             int limit
     ) {
 
+        // L1: index local, chỉ dùng khi đã warm và đủ số lượng tài xế yêu cầu
+        if (driverGridIndex.isWarm()) {
+            List<NearbyDriverResponse> local = driverGridIndex.findNearest(latitude, longitude, radiusKm, limit);
+            if (local.size() >= limit) {
+                localIndexHits.increment();
+                return local;
+            }
+        }
+        localIndexFallbacks.increment();
+
         // 🚀 Dùng GEOSEARCH API mới: luôn trả về có tọa độ + distance
         GeoResults<RedisGeoCommands.GeoLocation<String>> results =
                 redisDriverRepository.findNearbyDrivers(latitude, longitude, radiusKm, limit);
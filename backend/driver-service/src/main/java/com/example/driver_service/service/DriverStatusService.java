@@ -3,14 +3,17 @@ package com.example.driver_service.service;
 import com.example.driver_service.aop.RequireDriver;
 import com.example.driver_service.client.UserClient;
 import com.example.driver_service.dto.DriverResponse;
+import com.example.driver_service.dto.TripStatusEvent;
 import com.example.driver_service.enums.DriverStatus;
 import com.example.driver_service.repository.RedisDriverRepository;
 import com.example.driver_service.utils.SecurityUtil;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
 import java.util.List;
 
 @Service
+@Slf4j
 public class DriverStatusService {
 
     private final RedisDriverRepository redisDriverRepository;
@@ -46,6 +49,11 @@ public class DriverStatusService {
         redisDriverRepository.setStatus(driverId, DriverStatus.BUSY);
     }
 
+    public void applyTripEvents(List<TripStatusEvent> events) {
+        long applied = redisDriverRepository.applyTripEvents(events);
+        log.info("Applied {} of {} trip status events to driver status", applied, events.size());
+    }
+
     public String getStatus(String driverId) {
         return redisDriverRepository.getStatus(driverId);
     }
@@ -12,6 +12,8 @@ public interface ITripNotificationService {
 
     void handleTripNotification(TripNotificationRequest notification);
 
+    void handleTripNotifications(List<TripNotificationRequest> notifications);
+
     TripNotificationResponse acceptTrip(UUID tripId, UUID driverId);
 
     TripNotificationResponse declineTrip(UUID tripId, UUID driverId);
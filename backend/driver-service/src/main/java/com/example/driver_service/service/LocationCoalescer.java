@@ -0,0 +1,81 @@
+package com.example.driver_service.service;
+
+import com.example.driver_service.utils.GeoUtils;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Drops location updates from drivers that have not moved far enough since their last write,
+ * while still letting one update through every heartbeat so Redis never goes stale.
+ */
+@Component
+public class LocationCoalescer {
+
+    private final Map<String, LastWrite> lastWrites = new ConcurrentHashMap<>();
+
+    private final double minDistanceMeters;
+    private final long heartbeatMillis;
+
+    private final Counter received;
+    private final Counter dropped;
+
+    public LocationCoalescer(MeterRegistry meterRegistry,
+                             @Value("${driver.location.coalesce.min-distance-meters:20}") double minDistanceMeters,
+                             @Value("${driver.location.coalesce.heartbeat-ms:5000}") long heartbeatMillis) {
+        this.minDistanceMeters = minDistanceMeters;
+        this.heartbeatMillis = heartbeatMillis;
+
+        this.received = meterRegistry.counter("driver.location.coalesce.received");
+        this.dropped = meterRegistry.counter("driver.location.coalesce.dropped");
+        Gauge.builder("driver.location.coalesce.drop.ratio", this, LocationCoalescer::dropRatio)
+                .description("Share of received location updates that were not written to Redis")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Returns true if this update must be written. Nothing is recorded here; the caller reports
+     * the write through {@link #recordWrite} once Redis has actually stored it.
+     */
+    public boolean shouldWrite(String driverId, double lat, double lng, long now) {
+        received.increment();
+
+        LastWrite last = lastWrites.get(driverId);
+        if (last == null
+                || now - last.writtenAt() >= heartbeatMillis
+                || GeoUtils.distanceMeters(last.lat(), last.lng(), lat, lng) >= minDistanceMeters) {
+            return true;
+        }
+
+        dropped.increment();
+        return false;
+    }
+
+    /**
+     * Records a position that has been written to Redis, so later updates are coalesced against it.
+     */
+    public void recordWrite(String driverId, double lat, double lng, long writtenAt) {
+        LastWrite written = new LastWrite(lat, lng, writtenAt);
+        // Flushes can complete out of order; keep the newest write
+        lastWrites.merge(driverId, written, (last, next) -> next.writtenAt() >= last.writtenAt() ? next : last);
+    }
+
+    @Scheduled(fixedDelayString = "${driver.location.coalesce.cleanup-interval-ms:60000}")
+    public void forgetInactiveDrivers() {
+        long cutoff = System.currentTimeMillis() - heartbeatMillis * 10;
+        lastWrites.entrySet().removeIf(e -> e.getValue().writtenAt() < cutoff);
+    }
+
+    private double dropRatio() {
+        double total = received.count();
+        return total == 0 ? 0 : dropped.count() / total;
+    }
+
+    private record LastWrite(double lat, double lng, long writtenAt) { }
+}
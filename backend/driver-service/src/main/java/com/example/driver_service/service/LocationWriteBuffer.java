@@ -0,0 +1,147 @@
+package com.example.driver_service.service;
+
+import com.example.driver_service.entity.DriverLocation;
+import com.example.driver_service.repository.RedisDriverRepository;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Collects location updates from all gRPC streams and writes them to Redis
+ * in micro-batches, one Redis round trip per flush.
+ */
+@Component
+@Slf4j
+public class LocationWriteBuffer {
+
+    private final RedisDriverRepository redisDriverRepository;
+    private final BlockingQueue<PendingWrite> queue;
+    private final int maxBatchSize;
+    private final ReentrantLock flushLock = new ReentrantLock();
+
+    private final Timer flushLatency;
+    private final DistributionSummary flushSize;
+
+    public LocationWriteBuffer(RedisDriverRepository redisDriverRepository,
+                               MeterRegistry meterRegistry,
+                               @Value("${driver.location.buffer-capacity:50000}") int bufferCapacity,
+                               @Value("${driver.location.max-batch-size:1000}") int maxBatchSize) {
+        this.redisDriverRepository = redisDriverRepository;
+        this.queue = new LinkedBlockingQueue<>(bufferCapacity);
+        this.maxBatchSize = maxBatchSize;
+
+        this.flushLatency = Timer.builder("driver.location.flush.latency")
+                .description("Time spent writing one batch of driver locations to Redis")
+                .register(meterRegistry);
+        this.flushSize = DistributionSummary.builder("driver.location.flush.size")
+                .description("Number of driver locations written per Redis flush")
+                .register(meterRegistry);
+        Gauge.builder("driver.location.buffer.pending", queue, BlockingQueue::size)
+                .description("Driver locations waiting to be flushed")
+                .register(meterRegistry);
+    }
+
+    public void enqueue(DriverLocation location) {
+        enqueue(location, null);
+    }
+
+    /**
+     * Queues a location for the next flush; {@code completion} (may be null) is called once the
+     * flush containing it has been written to Redis, or has failed.
+     */
+    public void enqueue(DriverLocation location, Completion completion) {
+        PendingWrite pending = new PendingWrite(location, completion);
+        if (!queue.offer(pending)) {
+            // Buffer is full: write on the caller's thread so the stream slows down instead of piling up work
+            write(List.of(pending));
+            return;
+        }
+
+        if (queue.size() >= maxBatchSize) {
+            flush();
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${driver.location.flush-interval-ms:5}")
+    public void flush() {
+        // Only one flush at a time; whoever holds the lock drains what the others enqueued
+        if (!flushLock.tryLock()) {
+            return;
+        }
+
+        try {
+            List<PendingWrite> batch = new ArrayList<>(maxBatchSize);
+            while (queue.drainTo(batch, maxBatchSize) > 0) {
+                write(batch);
+                batch.clear();
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    private void write(List<PendingWrite> batch) {
+        List<DriverLocation> locations = new ArrayList<>(batch.size());
+        for (PendingWrite pending : batch) {
+            locations.add(pending.location());
+        }
+
+        boolean applied = false;
+        long start = System.nanoTime();
+        try {
+            redisDriverRepository.updateLocations(locations);
+            applied = true;
+        } catch (Exception e) {
+            log.error("Failed to flush {} driver locations to Redis: {}", batch.size(), e.getMessage(), e);
+        } finally {
+            flushLatency.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            flushSize.record(batch.size());
+        }
+
+        for (PendingWrite pending : batch) {
+            if (pending.completion() == null) {
+                continue;
+            }
+            try {
+                pending.completion().onComplete(applied);
+            } catch (Exception e) {
+                log.warn("Location write completion failed for driver {}: {}",
+                        pending.location().getDriverId(), e.getMessage());
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flushLock.lock();
+        try {
+            List<PendingWrite> batch = new ArrayList<>();
+            queue.drainTo(batch);
+            if (!batch.isEmpty()) {
+                write(batch);
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    @FunctionalInterface
+    public interface Completion {
+        void onComplete(boolean applied);
+    }
+
+    private record PendingWrite(DriverLocation location, Completion completion) { }
+}
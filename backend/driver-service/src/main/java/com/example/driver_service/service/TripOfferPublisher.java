@@ -0,0 +1,176 @@
+package com.example.driver_service.service;
+
+import com.example.driver_service.entity.PendingTripNotification;
+import com.example.driver_service.grpc.TripOffer;
+import com.example.driver_service.repository.RedisTripOfferRouteRepository;
+import com.google.protobuf.InvalidProtocolBufferException;
+import io.grpc.stub.ServerCallStreamObserver;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Base64;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Pushes trip offers to drivers subscribed through {@code SubscribeTripOffers}.
+ * <p>
+ * Streams open on this node are kept in memory; drivers connected to another node are reached
+ * through that node's relay channel, found via {@link RedisTripOfferRouteRepository}.
+ * Relayed messages are {@code driverId|base64(TripOffer)}.
+ */
+@Service
+@Slf4j
+public class TripOfferPublisher {
+
+    private final RedisTripOfferRouteRepository routeRepository;
+
+    private final String nodeId = UUID.randomUUID().toString();
+
+    private final Duration presenceTtl;
+
+    private final Map<String, Set<ServerCallStreamObserver<TripOffer>>> streams = new ConcurrentHashMap<>();
+
+    public TripOfferPublisher(RedisTripOfferRouteRepository routeRepository,
+                              @Value("${driver.offer.presence-ttl-ms:30000}") long presenceTtlMillis) {
+        this.routeRepository = routeRepository;
+        this.presenceTtl = Duration.ofMillis(presenceTtlMillis);
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    public void subscribe(String driverId, ServerCallStreamObserver<TripOffer> observer) {
+        streams.computeIfAbsent(driverId, id -> ConcurrentHashMap.newKeySet()).add(observer);
+        routeRepository.register(driverId, nodeId, presenceTtl);
+        log.info("Driver {} subscribed to trip offers on node {}", driverId, nodeId);
+    }
+
+    public void unsubscribe(String driverId, ServerCallStreamObserver<TripOffer> observer) {
+        Set<ServerCallStreamObserver<TripOffer>> remaining = streams.computeIfPresent(driverId, (id, observers) -> {
+            observers.remove(observer);
+            return observers.isEmpty() ? null : observers;
+        });
+        if (remaining == null) {
+            routeRepository.unregister(driverId, nodeId);
+        }
+        log.info("Driver {} unsubscribed from trip offers", driverId);
+    }
+
+    /**
+     * Sends the offer to the driver's stream, locally or through the owning node.
+     * Returns false when the driver has no open stream anywhere; the offer is still stored for polling.
+     */
+    public boolean push(String driverId, TripOffer offer) {
+        if (deliverLocally(driverId, offer)) {
+            return true;
+        }
+
+        Optional<String> node = routeRepository.findNode(driverId);
+        if (node.isEmpty() || node.get().equals(nodeId)) {
+            return false;
+        }
+
+        routeRepository.relay(node.get(), driverId + "|" + Base64.getEncoder().encodeToString(offer.toByteArray()));
+        return true;
+    }
+
+    /** Handles a message from this node's relay channel. */
+    public void onRelayed(String message) {
+        int separator = message.indexOf('|');
+        if (separator < 0) {
+            log.warn("Malformed relayed trip offer: {}", message);
+            return;
+        }
+
+        String driverId = message.substring(0, separator);
+        try {
+            TripOffer offer = TripOffer.parseFrom(Base64.getDecoder().decode(message.substring(separator + 1)));
+            if (!deliverLocally(driverId, offer)) {
+                log.debug("Relayed trip offer {} arrived after driver {} disconnected", offer.getTripId(), driverId);
+            }
+        } catch (InvalidProtocolBufferException | IllegalArgumentException e) {
+            log.warn("Failed to decode relayed trip offer for driver {}: {}", driverId, e.getMessage());
+        }
+    }
+
+    // Keeps the routes of connected drivers alive; also repairs a route removed by a racing unsubscribe
+    @Scheduled(fixedDelayString = "${driver.offer.heartbeat-ms:10000}")
+    public void heartbeat() {
+        routeRepository.refresh(streams.keySet(), nodeId, presenceTtl);
+    }
+
+    private boolean deliverLocally(String driverId, TripOffer offer) {
+        Set<ServerCallStreamObserver<TripOffer>> observers = streams.get(driverId);
+        if (observers == null) {
+            return false;
+        }
+
+        boolean delivered = false;
+        for (ServerCallStreamObserver<TripOffer> observer : observers) {
+            // StreamObserver is not thread-safe; the feed, Rabbit and relay threads may all push
+            synchronized (observer) {
+                if (observer.isCancelled()) {
+                    continue;
+                }
+                try {
+                    observer.onNext(offer);
+                    delivered = true;
+                } catch (RuntimeException e) {
+                    log.warn("Failed to push trip offer {} to driver {}: {}", offer.getTripId(), driverId, e.getMessage());
+                }
+            }
+        }
+        return delivered;
+    }
+
+    public static TripOffer toTripOffer(PendingTripNotification pending) {
+        TripOffer.Builder builder = TripOffer.newBuilder()
+                .setTripId(pending.getTripId().toString());
+
+        if (pending.getPassengerId() != null) {
+            builder.setPassengerId(pending.getPassengerId().toString());
+        }
+        if (pending.getPassengerName() != null) {
+            builder.setPassengerName(pending.getPassengerName());
+        }
+        if (pending.getPickupLatitude() != null) {
+            builder.setPickupLatitude(pending.getPickupLatitude());
+        }
+        if (pending.getPickupLongitude() != null) {
+            builder.setPickupLongitude(pending.getPickupLongitude());
+        }
+        if (pending.getDestinationLatitude() != null) {
+            builder.setDestinationLatitude(pending.getDestinationLatitude());
+        }
+        if (pending.getDestinationLongitude() != null) {
+            builder.setDestinationLongitude(pending.getDestinationLongitude());
+        }
+        if (pending.getEstimatedFare() != null) {
+            builder.setEstimatedFare(pending.getEstimatedFare().toPlainString());
+        }
+        if (pending.getDistanceKm() != null) {
+            builder.setDistanceKm(pending.getDistanceKm());
+        }
+        if (pending.getNotifiedAt() != null) {
+            builder.setNotifiedAt(toEpochMillis(pending.getNotifiedAt()));
+        }
+        if (pending.getExpiresAt() != null) {
+            builder.setExpiresAt(toEpochMillis(pending.getExpiresAt()));
+        }
+        return builder.build();
+    }
+
+    private static long toEpochMillis(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+}
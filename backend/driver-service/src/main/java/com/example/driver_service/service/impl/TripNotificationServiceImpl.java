@@ -4,121 +4,119 @@ import com.example.driver_service.client.TripClient;
 import com.example.driver_service.dto.TripNotificationRequest;
 import com.example.driver_service.dto.TripNotificationResponse;
 import com.example.driver_service.entity.PendingTripNotification;
+import com.example.driver_service.enums.TripAcceptResult;
+import com.example.driver_service.repository.RedisPendingTripRepository;
+import com.example.driver_service.service.BatchMatchingService;
+import com.example.driver_service.service.DispatchService;
 import com.example.driver_service.service.ITripNotificationService;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.beans.factory.annotation.Qualifier;
-import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
 import java.util.*;
-import java.util.concurrent.TimeUnit;
-import java.util.stream.Collectors;
 
 @Service
 @Slf4j
 public class TripNotificationServiceImpl implements ITripNotificationService {
 
-    private static final String PENDING_TRIPS_KEY = "pending_trips:";
-    private static final int NOTIFICATION_TIMEOUT_SECONDS = 15;
+    private static final int ACCEPTED_TRIP_TTL_SECONDS = 60;
 
-    private final RedisTemplate<String, Object> redisTemplate;
+    private final RedisPendingTripRepository pendingTripRepository;
     private final TripClient tripClient;
+    private final DispatchService dispatchService;
+    private final BatchMatchingService batchMatchingService;
 
-    public TripNotificationServiceImpl(@Qualifier("redisObjectTemplate") RedisTemplate<String, Object> redisTemplate, 
-                                      TripClient tripClient) {
-        this.redisTemplate = redisTemplate;
+    private final String instanceId = UUID.randomUUID().toString();
+
+    @Value("${driver.notification.sweeper.batch-size:500}")
+    private int sweeperBatchSize;
+
+    @Value("${driver.notification.sweeper.max-batches:20}")
+    private int sweeperMaxBatches;
+
+    @Value("${driver.notification.sweeper.lock-ttl-ms:10000}")
+    private long sweeperLockTtlMillis;
+
+    public TripNotificationServiceImpl(RedisPendingTripRepository pendingTripRepository,
+                                      TripClient tripClient,
+                                      DispatchService dispatchService,
+                                      BatchMatchingService batchMatchingService) {
+        this.pendingTripRepository = pendingTripRepository;
         this.tripClient = tripClient;
+        this.dispatchService = dispatchService;
+        this.batchMatchingService = batchMatchingService;
     }
 
     @Override
     public void handleTripNotification(TripNotificationRequest notification) {
-        log.info("Received trip notification: tripId={}, passengerId={}, nearbyDrivers={}, fare={}", 
-                notification.getTripId(), notification.getPassengerId(), 
-                notification.getNearbyDriverIds(), notification.getEstimatedFare());
+        handleTripNotifications(List.of(notification));
+    }
 
-        if (notification.getNearbyDriverIds() == null || notification.getNearbyDriverIds().isEmpty()) {
-            log.warn("No nearby drivers for trip {}, skipping notification storage", notification.getTripId());
-            return;
+    @Override
+    public void handleTripNotifications(List<TripNotificationRequest> notifications) {
+        for (TripNotificationRequest notification : notifications) {
+            log.info("Received trip notification: tripId={}, passengerId={}, nearbyDrivers={}, fare={}", 
+                    notification.getTripId(), notification.getPassengerId(), 
+                    notification.getNearbyDriverIds(), notification.getEstimatedFare());
         }
 
-        // Store notification for each nearby driver
-        for (String driverId : notification.getNearbyDriverIds()) {
-            PendingTripNotification pending = PendingTripNotification.builder()
-                    .tripId(notification.getTripId())
-                    .passengerId(notification.getPassengerId())
-                    .passengerName(notification.getPassengerName())
-                    .pickupLatitude(notification.getPickupLatitude())
-                    .pickupLongitude(notification.getPickupLongitude())
-                    .destinationLatitude(notification.getDestinationLatitude())
-                    .destinationLongitude(notification.getDestinationLongitude())
-                    .estimatedFare(notification.getEstimatedFare())
-                    .distanceKm(notification.getDistanceKm())
-                    .notifiedAt(LocalDateTime.now())
-                    .expiresAt(LocalDateTime.now().plusSeconds(NOTIFICATION_TIMEOUT_SECONDS))
-                    .expired(false)
-                    .accepted(false)
-                    .build();
-
-            // Store in Redis with TTL of 15 seconds, keyed by driver and trip
-            String key = PENDING_TRIPS_KEY + driverId + ":" + notification.getTripId().toString();
-            redisTemplate.opsForValue().set(key, pending, NOTIFICATION_TIMEOUT_SECONDS, TimeUnit.SECONDS);
-
-            log.info("Stored pending trip notification for driver {}: tripId={}, expiresAt={}", 
-                    driverId, notification.getTripId(), pending.getExpiresAt());
+        // Region bật batch matching: gom theo ô địa lý rồi dispatch sau mỗi window
+        List<TripNotificationRequest> batched = new ArrayList<>();
+        List<TripNotificationRequest> greedy = new ArrayList<>();
+        for (TripNotificationRequest notification : notifications) {
+            if (batchMatchingService.isBatchRegion(notification)) {
+                batched.add(notification);
+            } else {
+                greedy.add(notification);
+            }
         }
+        batchMatchingService.enqueue(batched);
 
-        log.info("Trip notification stored for {} drivers", notification.getNearbyDriverIds().size());
+        // Dispatch engine giữ danh sách ứng viên; offer đầu tiên của cả batch ghi trong một pipeline
+        dispatchService.start(greedy);
     }
 
     @Override
     public TripNotificationResponse acceptTrip(UUID tripId, UUID driverId) {
-        String key = PENDING_TRIPS_KEY + driverId.toString() + ":" + tripId.toString();
-        PendingTripNotification pending = (PendingTripNotification) redisTemplate.opsForValue().get(key);
-
-        if (pending == null) {
-            log.warn("Trip notification not found or expired for driver {}: tripId={}", driverId, tripId);
-            return TripNotificationResponse.builder()
-                    .tripId(tripId)
-                    .driverId(driverId)
-                    .accepted(false)
-                    .message("Trip notification not found or has expired")
-                    .build();
-        }
-
-        if (pending.isExpired() || LocalDateTime.now().isAfter(pending.getExpiresAt())) {
-            log.warn("Trip notification has expired: tripId={}, driverId={}", tripId, driverId);
-            redisTemplate.delete(key);
-            return TripNotificationResponse.builder()
-                    .tripId(tripId)
-                    .driverId(driverId)
-                    .accepted(false)
-                    .message("Trip notification has expired")
-                    .build();
-        }
-
-        if (pending.isAccepted()) {
-            log.warn("Trip already accepted by another driver: tripId={}, acceptedBy={}", 
-                    tripId, pending.getAcceptedByDriverId());
-            return TripNotificationResponse.builder()
-                    .tripId(tripId)
-                    .driverId(driverId)
-                    .accepted(false)
-                    .message("Trip already accepted by another driver")
-                    .build();
+        // Claim + xoá offer của các tài xế khác trong một lần gọi script, không còn GET-check-SET
+        TripAcceptResult result = pendingTripRepository.claimTrip(tripId, driverId, ACCEPTED_TRIP_TTL_SECONDS);
+
+        switch (result) {
+            case NOT_FOUND -> {
+                log.warn("Trip notification not found or expired for driver {}: tripId={}", driverId, tripId);
+                return TripNotificationResponse.builder()
+                        .tripId(tripId)
+                        .driverId(driverId)
+                        .accepted(false)
+                        .message("Trip notification not found or has expired")
+                        .build();
+            }
+            case TAKEN -> {
+                log.warn("Trip already accepted by another driver: tripId={}", tripId);
+                return TripNotificationResponse.builder()
+                        .tripId(tripId)
+                        .driverId(driverId)
+                        .accepted(false)
+                        .message("Trip already accepted by another driver")
+                        .build();
+            }
+            case ALREADY_ACCEPTED -> {
+                // Retry of an accept that already went through
+                log.info("Driver {} already accepted trip {}", driverId, tripId);
+                return TripNotificationResponse.builder()
+                        .tripId(tripId)
+                        .driverId(driverId)
+                        .accepted(true)
+                        .message("Trip accepted successfully")
+                        .build();
+            }
+            default -> log.info("Driver {} accepted trip {}", driverId, tripId);
         }
 
-        // Mark as accepted
-        pending.setAccepted(true);
-        pending.setAcceptedByDriverId(driverId);
-        redisTemplate.opsForValue().set(key, pending, 60, TimeUnit.SECONDS); // Keep for 1 minute
-        
-        // Also delete notifications for other drivers
-        deleteOtherDriverNotifications(tripId, driverId);
-
-        log.info("Driver {} accepted trip {}", driverId, tripId);
+        dispatchService.onAccepted(tripId);
 
         // Call trip-service to update trip status
         try {
@@ -137,24 +135,14 @@ public class TripNotificationServiceImpl implements ITripNotificationService {
                 .message("Trip accepted successfully")
                 .build();
     }
-    
-    private void deleteOtherDriverNotifications(UUID tripId, UUID acceptingDriverId) {
-        // Find and delete notifications for this trip from other drivers
-        Set<String> allKeys = redisTemplate.keys(PENDING_TRIPS_KEY + "*:" + tripId.toString());
-        if (allKeys != null) {
-            for (String key : allKeys) {
-                if (!key.contains(acceptingDriverId.toString())) {
-                    redisTemplate.delete(key);
-                    log.info("Deleted trip {} notification for other driver from key: {}", tripId, key);
-                }
-            }
-        }
-    }
 
     @Override
     public TripNotificationResponse declineTrip(UUID tripId, UUID driverId) {
         log.info("Driver {} declined trip {}", driverId, tripId);
 
+        // Giải phóng slot + giữ chỗ, offer ngay cho ứng viên tiếp theo, không chờ hết 15 giây
+        dispatchService.onDeclined(tripId, driverId);
+
         return TripNotificationResponse.builder()
                 .tripId(tripId)
                 .driverId(driverId)
@@ -165,50 +153,79 @@ public class TripNotificationServiceImpl implements ITripNotificationService {
 
     @Override
     public Optional<PendingTripNotification> getPendingNotification(UUID tripId) {
-        String key = PENDING_TRIPS_KEY + tripId.toString();
-        PendingTripNotification pending = (PendingTripNotification) redisTemplate.opsForValue().get(key);
-        return Optional.ofNullable(pending);
+        return pendingTripRepository.findAnyOffer(tripId);
     }
 
     @Override
     public List<PendingTripNotification> getPendingNotificationsForDriver(UUID driverId) {
-        // Get pending trip keys for this specific driver
-        String pattern = PENDING_TRIPS_KEY + driverId.toString() + ":*";
-        Set<String> keys = redisTemplate.keys(pattern);
-        
-        if (keys == null || keys.isEmpty()) {
-            log.info("No pending trips found for driver {}", driverId);
-            return Collections.emptyList();
-        }
+        // Driver index (ZSET by expiry) + one MGET instead of KEYS + N GETs
+        List<PendingTripNotification> pendingTrips = pendingTripRepository.findOffersForDriver(driverId).stream()
+                .filter(pending -> !pending.isExpired() && !pending.isAccepted()
+                        && LocalDateTime.now().isBefore(pending.getExpiresAt()))
+                .toList();
 
-        List<PendingTripNotification> pendingTrips = new ArrayList<>();
-        for (String key : keys) {
-            PendingTripNotification pending = (PendingTripNotification) redisTemplate.opsForValue().get(key);
-            if (pending != null && !pending.isExpired() && !pending.isAccepted() 
-                    && LocalDateTime.now().isBefore(pending.getExpiresAt())) {
-                pendingTrips.add(pending);
-            }
+        if (pendingTrips.isEmpty()) {
+            log.info("No pending trips found for driver {}", driverId);
+        } else {
+            log.info("Found {} pending trips for driver {}", pendingTrips.size(), driverId);
         }
-
-        log.info("Found {} pending trips for driver {}", pendingTrips.size(), driverId);
         return pendingTrips;
     }
 
     @Override
-    @Scheduled(fixedRate = 5000) // Run every 5 seconds
+    @Scheduled(fixedDelayString = "${driver.notification.sweeper.interval-ms:1000}")
     public void expirePendingNotifications() {
-        Set<String> keys = redisTemplate.keys(PENDING_TRIPS_KEY + "*");
-        
-        if (keys == null || keys.isEmpty()) {
+        // One replica at a time; the others skip this round
+        if (!pendingTripRepository.tryLockSweeper(instanceId, Duration.ofMillis(sweeperLockTtlMillis))) {
             return;
         }
 
-        for (String key : keys) {
-            PendingTripNotification pending = (PendingTripNotification) redisTemplate.opsForValue().get(key);
-            if (pending != null && LocalDateTime.now().isAfter(pending.getExpiresAt())) {
-                pending.setExpired(true);
-                redisTemplate.delete(key);
-                log.info("Expired trip notification: tripId={}", pending.getTripId());
+        try {
+            long now = System.currentTimeMillis();
+            int total = 0;
+
+            // Only entries whose expiry score has passed, oldest first, in bounded batches
+            for (int batch = 0; batch < sweeperMaxBatches; batch++) {
+                Set<String> expired = pendingTripRepository.findExpired(now, sweeperBatchSize);
+                if (expired.isEmpty()) {
+                    break;
+                }
+
+                pendingTripRepository.removeOffers(expired);
+                total += expired.size();
+                advanceDispatches(expired);
+
+                if (expired.size() < sweeperBatchSize) {
+                    break;
+                }
+            }
+
+            if (total > 0) {
+                log.info("Expired {} trip notifications", total);
+            }
+
+            // Trip chờ ứng viên đang bị trip khác giữ chỗ: thử lại khi giữ chỗ đã hết hạn
+            int retried = dispatchService.retryReserved(now, sweeperBatchSize);
+            if (retried > 0) {
+                log.info("Retried dispatch of {} trips waiting for reserved drivers", retried);
+            }
+        } finally {
+            pendingTripRepository.unlockSweeper(instanceId);
+        }
+    }
+
+    // Entries are driverId:tripId; each trip with an expired offer moves on to its next candidate
+    private void advanceDispatches(Set<String> expiredEntries) {
+        Set<UUID> tripIds = new HashSet<>();
+        for (String entry : expiredEntries) {
+            tripIds.add(UUID.fromString(entry.substring(entry.indexOf(':') + 1)));
+        }
+
+        for (UUID tripId : tripIds) {
+            try {
+                dispatchService.advance(tripId);
+            } catch (Exception e) {
+                log.error("Failed to advance dispatch of trip {}: {}", tripId, e.getMessage(), e);
             }
         }
     }
@@ -0,0 +1,30 @@
+package com.example.driver_service.utils;
+
+public final class GeoUtils {
+
+    private static final double EARTH_RADIUS_METERS = 6_371_000.0;
+
+    // Redis GEO chỉ nhận vĩ độ trong khoảng Web Mercator
+    private static final double MAX_GEO_LATITUDE = 85.05112878;
+
+    private GeoUtils() {
+        throw new UnsupportedOperationException("Utility class");
+    }
+
+    public static double distanceMeters(double lat1, double lng1, double lat2, double lng2) {
+        double latRad1 = Math.toRadians(lat1);
+        double latRad2 = Math.toRadians(lat2);
+
+        double sinDlat = Math.sin((latRad2 - latRad1) / 2);
+        double sinDlon = Math.sin(Math.toRadians(lng2 - lng1) / 2);
+
+        double hav = sinDlat * sinDlat + Math.cos(latRad1) * Math.cos(latRad2) * sinDlon * sinDlon;
+
+        return 2 * EARTH_RADIUS_METERS * Math.atan2(Math.sqrt(hav), Math.sqrt(1 - hav));
+    }
+
+    public static boolean isValidPosition(double lat, double lng) {
+        return lat >= -MAX_GEO_LATITUDE && lat <= MAX_GEO_LATITUDE
+                && lng >= -180.0 && lng <= 180.0;
+    }
+}
@@ -0,0 +1,114 @@
+package com.example.driver_service.utils;
+
+import java.util.Arrays;
+
+/**
+ * Min-cost assignment (Hungarian / Kuhn-Munkres with potentials), O(n^2 * m) for n rows and m columns.
+ * Missing edges should be given a large finite cost such as {@link #UNREACHABLE}, never infinity.
+ */
+public final class HungarianSolver {
+
+    public static final double UNREACHABLE = 1e12;
+
+    private HungarianSolver() {
+        throw new UnsupportedOperationException("Utility class");
+    }
+
+    /** Returns, for each row, the assigned column, or -1 when the row is left unassigned (more rows than columns). */
+    public static int[] solve(double[][] cost) {
+        int rows = cost.length;
+        if (rows == 0) {
+            return new int[0];
+        }
+        int cols = cost[0].length;
+        if (cols == 0) {
+            int[] none = new int[rows];
+            Arrays.fill(none, -1);
+            return none;
+        }
+
+        if (rows > cols) {
+            int[] byColumn = solve(transpose(cost));
+            int[] result = new int[rows];
+            Arrays.fill(result, -1);
+            for (int col = 0; col < cols; col++) {
+                if (byColumn[col] >= 0) {
+                    result[byColumn[col]] = col;
+                }
+            }
+            return result;
+        }
+
+        // 1-indexed; p[j] = row matched to column j, column 0 is the virtual start
+        double[] u = new double[rows + 1];
+        double[] v = new double[cols + 1];
+        int[] p = new int[cols + 1];
+        int[] way = new int[cols + 1];
+        double[] minv = new double[cols + 1];
+        boolean[] used = new boolean[cols + 1];
+
+        for (int i = 1; i <= rows; i++) {
+            p[0] = i;
+            int j0 = 0;
+            Arrays.fill(minv, Double.POSITIVE_INFINITY);
+            Arrays.fill(used, false);
+
+            do {
+                used[j0] = true;
+                int i0 = p[j0];
+                int j1 = 0;
+                double delta = Double.POSITIVE_INFINITY;
+
+                for (int j = 1; j <= cols; j++) {
+                    if (used[j]) {
+                        continue;
+                    }
+                    double reduced = cost[i0 - 1][j - 1] - u[i0] - v[j];
+                    if (reduced < minv[j]) {
+                        minv[j] = reduced;
+                        way[j] = j0;
+                    }
+                    if (minv[j] < delta) {
+                        delta = minv[j];
+                        j1 = j;
+                    }
+                }
+
+                for (int j = 0; j <= cols; j++) {
+                    if (used[j]) {
+                        u[p[j]] += delta;
+                        v[j] -= delta;
+                    } else {
+                        minv[j] -= delta;
+                    }
+                }
+                j0 = j1;
+            } while (p[j0] != 0);
+
+            do {
+                int j1 = way[j0];
+                p[j0] = p[j1];
+                j0 = j1;
+            } while (j0 != 0);
+        }
+
+        int[] result = new int[rows];
+        Arrays.fill(result, -1);
+        for (int j = 1; j <= cols; j++) {
+            if (p[j] != 0) {
+                result[p[j] - 1] = j - 1;
+            }
+        }
+        return result;
+    }
+
+    private static double[][] transpose(double[][] matrix) {
+        double[][] transposed = new double[matrix[0].length][matrix.length];
+        for (int i = 0; i < matrix.length; i++) {
+            for (int j = 0; j < matrix[i].length; j++) {
+                transposed[j][i] = matrix[i][j];
+            }
+        }
+        return transposed;
+    }
+}
@@ -0,0 +1,46 @@
+-- Atomically claims a trip for one driver and drops the offers made to everyone else.
+-- KEYS[1] = pending_trips:{driverId}:{tripId}
+-- KEYS[2] = trip:{tripId}:claim
+-- KEYS[3] = trip:{tripId}:notified_drivers
+-- KEYS[4] = pending_trips:expiry
+-- ARGV[1] = driverId, ARGV[2] = tripId, ARGV[3] = claim TTL in seconds, ARGV[4] = driver feed channel
+-- Returns 1 = accepted, 2 = already accepted by this driver, 0 = no live offer, -1 = taken by another driver
+local driverId = ARGV[1]
+local tripId = ARGV[2]
+local ttl = tonumber(ARGV[3])
+
+local claimedBy = redis.call('GET', KEYS[2])
+if claimedBy then
+    if claimedBy == driverId then
+        return 2
+    end
+    return -1
+end
+
+if redis.call('EXISTS', KEYS[1]) == 0 then
+    return 0
+end
+
+redis.call('SET', KEYS[2], driverId, 'EX', ttl)
+
+for _, other in ipairs(redis.call('SMEMBERS', KEYS[3])) do
+    if other ~= driverId then
+        redis.call('DEL', 'pending_trips:' .. other .. ':' .. tripId)
+        redis.call('ZREM', 'driver:' .. other .. ':pending_trips', tripId)
+        redis.call('ZREM', KEYS[4], other .. ':' .. tripId)
+        local reservation = 'driver:' .. other .. ':reserved'
+        if redis.call('GET', reservation) == tripId then
+            redis.call('DEL', reservation)
+            redis.call('PUBLISH', ARGV[4], 'U|' .. other)
+        end
+    end
+end
+
+-- The winner's offer stays readable as long as the claim, but is no longer pending
+redis.call('DEL', KEYS[3])
+redis.call('SADD', KEYS[3], driverId)
+redis.call('EXPIRE', KEYS[3], ttl)
+redis.call('EXPIRE', KEYS[1], ttl)
+redis.call('ZREM', 'driver:' .. driverId .. ':pending_trips', tripId)
+redis.call('ZREM', KEYS[4], driverId .. ':' .. tripId)
+return 1
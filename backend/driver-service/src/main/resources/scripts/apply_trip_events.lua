@@ -0,0 +1,43 @@
+-- Applies trip lifecycle events to driver status, in order and at most once per driver and trip.
+-- KEYS[1] = GEO set of every driver, KEYS[2] = GEO set of ONLINE drivers
+-- ARGV[1] = location feed channel, ARGV[2] = guard TTL seconds,
+-- then (driverId, tripId, tripStatus, version) quadruples
+-- ACCEPTED / IN_PROGRESS make the driver BUSY; COMPLETED / CANCELLED bring a BUSY driver back ONLINE.
+-- driver:{id}:trip:{tripId}:version keeps the last applied version of the trip (issued by trip-service's
+-- database, not a pod clock), so replays and late events of that trip are ignored.
+local channel = ARGV[1]
+local ttl = ARGV[2]
+local applied = 0
+
+for i = 3, #ARGV, 4 do
+    local driverId = ARGV[i]
+    local tripStatus = ARGV[i + 2]
+    local version = tonumber(ARGV[i + 3])
+    local statusKey = 'driver:' .. driverId .. ':status'
+    local versionKey = 'driver:' .. driverId .. ':trip:' .. ARGV[i + 1] .. ':version'
+
+    local last = tonumber(redis.call('GET', versionKey) or '-1')
+    if version > last then
+        redis.call('SET', versionKey, ARGV[i + 3], 'EX', ttl)
+
+        if tripStatus == 'ACCEPTED' or tripStatus == 'IN_PROGRESS' then
+            if redis.call('GET', statusKey) ~= 'BUSY' then
+                redis.call('SET', statusKey, 'BUSY')
+                redis.call('ZREM', KEYS[2], driverId)
+                redis.call('PUBLISH', channel, 'R|' .. driverId)
+            end
+            applied = applied + 1
+        elseif redis.call('GET', statusKey) == 'BUSY' then
+            -- A driver who went OFFLINE meanwhile stays OFFLINE
+            redis.call('SET', statusKey, 'ONLINE')
+            local position = redis.call('GEOPOS', KEYS[1], driverId)[1]
+            if position then
+                redis.call('GEOADD', KEYS[2], position[1], position[2], driverId)
+                redis.call('PUBLISH', channel, 'L|' .. driverId .. ',' .. position[1] .. ',' .. position[2])
+            end
+            applied = applied + 1
+        end
+    end
+end
+
+return applied
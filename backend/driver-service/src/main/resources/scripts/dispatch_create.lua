@@ -0,0 +1,26 @@
+-- Creates a dispatch exactly once; a redelivered trip leaves the running dispatch untouched.
+-- KEYS[1] = dispatch:{tripId}, KEYS[2] = dispatch:{tripId}:candidates
+-- ARGV[1] = TTL seconds, ARGV[2] = number of hash fields,
+-- followed by (field, value) pairs, then the candidates best first
+-- Returns 1 if the dispatch was created, 0 if it already existed.
+if redis.call('HSETNX', KEYS[1], 'status', 'SEARCHING') == 0 then
+    return 0
+end
+
+local last = 2 + tonumber(ARGV[2]) * 2
+if last > 2 then
+    redis.call('HSET', KEYS[1], unpack(ARGV, 3, last))
+end
+
+local candidates = {}
+for i = last + 1, #ARGV do
+    candidates[#candidates + 1] = i - last - 1
+    candidates[#candidates + 1] = ARGV[i]
+end
+if #candidates > 0 then
+    redis.call('ZADD', KEYS[2], 'NX', unpack(candidates))
+    redis.call('EXPIRE', KEYS[2], ARGV[1])
+end
+
+redis.call('EXPIRE', KEYS[1], ARGV[1])
+return 1
@@ -0,0 +1,7 @@
+-- Moves a dispatch out of SEARCHING exactly once.
+-- KEYS[1] = dispatch:{tripId}, ARGV[1] = new status
+if redis.call('HGET', KEYS[1], 'status') ~= 'SEARCHING' then
+    return 0
+end
+redis.call('HSET', KEYS[1], 'status', ARGV[1])
+return 1
@@ -0,0 +1,72 @@
+-- Picks the next drivers to offer a trip to, keeping at most ARGV[1] offers live at once.
+-- KEYS[1] = dispatch:{tripId}             (hash, field 'status')
+-- KEYS[2] = dispatch:{tripId}:candidates  (ZSET, best first)
+-- KEYS[3] = dispatch:{tripId}:tried       (SET)
+-- KEYS[4] = trip:{tripId}:notified_drivers (live offers)
+-- KEYS[5] = trip:{tripId}:claim
+-- ARGV[1] = max live offers, ARGV[2] = tripId, ARGV[3] = reservation TTL ms, ARGV[4] = feed channel
+-- Each chosen driver is reserved for the trip (driver:{id}:reserved) in the same call;
+-- candidates reserved by another trip are kept for later.
+-- Returns {'OFFER', driverId...}, {'WAITING'} when all offer slots are busy,
+-- {'RESERVED', ms} when a slot is free but every candidate left is reserved by another trip
+-- (ms = time until the first of those reservations expires),
+-- {'EXHAUSTED'} when a slot is free but no candidate is left, or {'STOPPED'}.
+if redis.call('HGET', KEYS[1], 'status') ~= 'SEARCHING' then
+    return {'STOPPED'}
+end
+
+if redis.call('EXISTS', KEYS[5]) == 1 then
+    redis.call('HSET', KEYS[1], 'status', 'MATCHED')
+    return {'STOPPED'}
+end
+
+local slots = tonumber(ARGV[1]) - redis.call('SCARD', KEYS[4])
+if slots <= 0 then
+    return {'WAITING'}
+end
+
+local tripId = ARGV[2]
+local result = {'OFFER'}
+local skipped = {}
+local retryIn = nil
+while slots > 0 do
+    local popped = redis.call('ZPOPMIN', KEYS[2])
+    if #popped == 0 then
+        break
+    end
+    local driverId = popped[1]
+    if redis.call('SISMEMBER', KEYS[3], driverId) == 0 then
+        local reservation = 'driver:' .. driverId .. ':reserved'
+        if redis.call('SET', reservation, tripId, 'NX', 'PX', ARGV[3]) or redis.call('GET', reservation) == tripId then
+            redis.call('SADD', KEYS[3], driverId)
+            if redis.call('PTTL', KEYS[3]) == -1 then
+                redis.call('PEXPIRE', KEYS[3], redis.call('PTTL', KEYS[1]))
+            end
+            -- Count the offer as live right away, so a concurrent call does not take the same slot
+            redis.call('SADD', KEYS[4], driverId)
+            redis.call('PUBLISH', ARGV[4], 'V|' .. driverId .. '|' .. ARGV[3])
+            result[#result + 1] = driverId
+            slots = slots - 1
+        else
+            skipped[#skipped + 1] = popped[2]
+            skipped[#skipped + 1] = driverId
+            local ttl = math.max(redis.call('PTTL', reservation), 0)
+            if retryIn == nil or ttl < retryIn then
+                retryIn = ttl
+            end
+        end
+    end
+end
+
+if #skipped > 0 then
+    redis.call('ZADD', KEYS[2], unpack(skipped))
+end
+
+if #result == 1 then
+    -- Candidates are still there, only busy with other trips: wait for them instead of widening
+    if retryIn ~= nil then
+        return {'RESERVED', tostring(retryIn)}
+    end
+    return {'EXHAUSTED'}
+end
+return result
@@ -0,0 +1,9 @@
+-- Drops the trips of a matching window that have been dispatched.
+-- KEYS[1] = matching:window:{cell} (LIST), KEYS[2] = matching:cells (SET)
+-- ARGV[1] = number of dispatched trips at the head of the list, ARGV[2] = cell
+-- The cell leaves the set only if no trip was added meanwhile.
+redis.call('LTRIM', KEYS[1], ARGV[1], -1)
+if redis.call('LLEN', KEYS[1]) == 0 then
+    redis.call('SREM', KEYS[2], ARGV[2])
+end
+return 1
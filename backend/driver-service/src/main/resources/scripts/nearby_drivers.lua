@@ -0,0 +1,24 @@
+-- Nearest ONLINE drivers that are not reserved by a trip offer.
+-- KEYS[1] = ONLINE GEO set
+-- ARGV[1] = lng, ARGV[2] = lat, ARGV[3] = radius km, ARGV[4] = limit, ARGV[5] = how many to scan
+-- Returns a flat list: driverId, distance km, lng, lat, ...
+local limit = tonumber(ARGV[4])
+local found = redis.call('GEORADIUS', KEYS[1], ARGV[1], ARGV[2], ARGV[3], 'km',
+        'WITHDIST', 'WITHCOORD', 'COUNT', tonumber(ARGV[5]), 'ASC')
+
+local result = {}
+local count = 0
+for _, entry in ipairs(found) do
+    if count >= limit then
+        break
+    end
+    local driverId = entry[1]
+    if redis.call('EXISTS', 'driver:' .. driverId .. ':reserved') == 0 then
+        result[#result + 1] = driverId
+        result[#result + 1] = entry[2]
+        result[#result + 1] = entry[3][1]
+        result[#result + 1] = entry[3][2]
+        count = count + 1
+    end
+end
+return result
@@ -0,0 +1,9 @@
+-- Releases a driver reservation only if it is still held by the given trip.
+-- KEYS[1] = driver:{driverId}:reserved
+-- ARGV[1] = tripId, ARGV[2] = driverId, ARGV[3] = feed channel
+if redis.call('GET', KEYS[1]) == ARGV[1] then
+    redis.call('DEL', KEYS[1])
+    redis.call('PUBLISH', ARGV[3], 'U|' .. ARGV[2])
+    return 1
+end
+return 0
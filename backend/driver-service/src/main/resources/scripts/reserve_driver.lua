@@ -0,0 +1,9 @@
+-- Reserves a driver for one trip for a short time; a second trip cannot reserve it meanwhile.
+-- KEYS[1] = driver:{driverId}:reserved
+-- ARGV[1] = tripId, ARGV[2] = TTL ms, ARGV[3] = driverId, ARGV[4] = feed channel
+-- Returns 1 when the driver is reserved for this trip (also if it already was), 0 otherwise.
+if redis.call('SET', KEYS[1], ARGV[1], 'NX', 'PX', ARGV[2]) or redis.call('GET', KEYS[1]) == ARGV[1] then
+    redis.call('PUBLISH', ARGV[4], 'V|' .. ARGV[3] .. '|' .. ARGV[2])
+    return 1
+end
+return 0
@@ -0,0 +1,18 @@
+-- Sets a driver's status and moves it in or out of the ONLINE GEO set atomically.
+-- KEYS[1] = status key, KEYS[2] = GEO set of every driver, KEYS[3] = GEO set of ONLINE drivers
+-- ARGV[1] = driverId, ARGV[2] = new status, ARGV[3] = location feed channel
+redis.call('SET', KEYS[1], ARGV[2])
+
+if ARGV[2] == 'ONLINE' then
+    -- Re-use the last known position; drivers without one join on their next location update
+    local position = redis.call('GEOPOS', KEYS[2], ARGV[1])[1]
+    if position then
+        redis.call('GEOADD', KEYS[3], position[1], position[2], ARGV[1])
+        redis.call('PUBLISH', ARGV[3], 'L|' .. ARGV[1] .. ',' .. position[1] .. ',' .. position[2])
+    end
+else
+    redis.call('ZREM', KEYS[3], ARGV[1])
+    redis.call('PUBLISH', ARGV[3], 'R|' .. ARGV[1])
+end
+
+return 1
@@ -0,0 +1,28 @@
+-- Writes a batch of driver locations in one round trip.
+-- KEYS[1] = GEO set of every driver, KEYS[2] = GEO set of ONLINE drivers
+-- ARGV[1] = location feed channel,
+-- followed by (driverId, lng, lat, updatedAt) quads; updatedAt is when the update was received (epoch millis)
+local written = 0
+local online = {}
+
+for i = 2, #ARGV, 4 do
+    local driverId, lng, lat, updatedAt = ARGV[i], ARGV[i + 1], ARGV[i + 2], ARGV[i + 3]
+
+    redis.call('GEOADD', KEYS[1], lng, lat, driverId)
+    redis.call('HSET', 'driver:' .. driverId, 'lat', lat, 'lng', lng, 'updatedAt', updatedAt)
+
+    -- Only ONLINE drivers are visible to the nearby search
+    if redis.call('GET', 'driver:' .. driverId .. ':status') == 'ONLINE' then
+        redis.call('GEOADD', KEYS[2], lng, lat, driverId)
+        online[#online + 1] = driverId .. ',' .. lng .. ',' .. lat
+    end
+
+    written = written + 1
+end
+
+-- Let every driver-service pod mirror the ONLINE set in its local index
+if #online > 0 then
+    redis.call('PUBLISH', ARGV[1], 'L|' .. table.concat(online, '|'))
+end
+
+return written
@@ -0,0 +1,75 @@
+package com.example.driver_service.config;
+
+import com.example.driver_service.entity.PendingTripNotification;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the binary codec with the JSON serializer it replaced, per pending trip offer.
+ * Not part of the test run; start it with {@link #main} from the test classpath.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PendingTripNotificationSerializerBenchmark {
+
+    private GenericJackson2JsonRedisSerializer json;
+    private PendingTripNotificationSerializer binary;
+
+    private PendingTripNotification value;
+    private byte[] jsonBytes;
+    private byte[] binaryBytes;
+
+    @Setup
+    public void setUp() {
+        json = RedisConfig.jsonSerializer();
+        binary = new PendingTripNotificationSerializer(json);
+
+        value = PendingTripNotificationSerializerTests.sample();
+        jsonBytes = json.serialize(value);
+        binaryBytes = binary.serialize(value);
+    }
+
+    @Benchmark
+    public byte[] serializeJson() {
+        return json.serialize(value);
+    }
+
+    @Benchmark
+    public byte[] serializeBinary() {
+        return binary.serialize(value);
+    }
+
+    @Benchmark
+    public Object deserializeJson() {
+        return json.deserialize(jsonBytes);
+    }
+
+    @Benchmark
+    public Object deserializeBinary() {
+        return binary.deserialize(binaryBytes);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(PendingTripNotificationSerializerBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,97 @@
+package com.example.driver_service.config;
+
+import com.example.driver_service.entity.PendingTripNotification;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PendingTripNotificationSerializerTests {
+
+    private final GenericJackson2JsonRedisSerializer json = RedisConfig.jsonSerializer();
+
+    private final PendingTripNotificationSerializer serializer = new PendingTripNotificationSerializer(json);
+
+    static PendingTripNotification sample() {
+        return PendingTripNotification.builder()
+                .tripId(UUID.fromString("0192f3a1-7c4e-7b2a-9f10-3c5d8e6a4b21"))
+                .passengerId(UUID.fromString("6f1c2d3e-4a5b-4c6d-8e7f-901a2b3c4d5e"))
+                .passengerName("Nguyễn Văn An")
+                .pickupLatitude(10.762622)
+                .pickupLongitude(106.660172)
+                .destinationLatitude(10.7769)
+                .destinationLongitude(106.7009)
+                .estimatedFare(new BigDecimal("45000.50"))
+                .distanceKm(5.23)
+                .notifiedAt(LocalDateTime.of(2026, 10, 18, 9, 30, 15, 123_000_000))
+                .expiresAt(LocalDateTime.of(2026, 10, 18, 9, 30, 30, 123_000_000))
+                .accepted(true)
+                .acceptedByDriverId(UUID.fromString("a1b2c3d4-e5f6-4a7b-8c9d-0e1f2a3b4c5d"))
+                .build();
+    }
+
+    @Test
+    void roundTripsEveryField() {
+        PendingTripNotification value = sample();
+
+        assertEquals(value, serializer.deserialize(serializer.serialize(value)));
+    }
+
+    @Test
+    void roundTripsNullFields() {
+        PendingTripNotification value = new PendingTripNotification();
+        value.setTripId(UUID.randomUUID());
+        value.setExpired(true);
+
+        PendingTripNotification decoded = serializer.deserialize(serializer.serialize(value));
+
+        assertEquals(value, decoded);
+        assertNull(decoded.getPassengerName());
+        assertNull(decoded.getEstimatedFare());
+        assertNull(decoded.getExpiresAt());
+        assertTrue(decoded.isExpired());
+        assertFalse(decoded.isAccepted());
+    }
+
+    @Test
+    void readsValuesWrittenByTheJsonSerializer() {
+        PendingTripNotification value = sample();
+
+        assertEquals(value, serializer.deserialize(json.serialize(value)));
+    }
+
+    @Test
+    void isAtLeastThreeTimesSmallerThanJson() {
+        PendingTripNotification value = sample();
+
+        int binary = serializer.serialize(value).length;
+        int legacy = json.serialize(value).length;
+
+        assertTrue(binary * 3 <= legacy, "binary " + binary + " bytes vs json " + legacy + " bytes");
+    }
+
+    @Test
+    void rejectsTruncatedValues() {
+        byte[] bytes = serializer.serialize(sample());
+
+        assertThrows(SerializationException.class,
+                () -> serializer.deserialize(Arrays.copyOf(bytes, bytes.length - 4)));
+    }
+
+    @Test
+    void mapsNullAndEmptyToNull() {
+        assertNull(serializer.serialize(null));
+        assertNull(serializer.deserialize(null));
+        assertNull(serializer.deserialize(new byte[0]));
+    }
+}
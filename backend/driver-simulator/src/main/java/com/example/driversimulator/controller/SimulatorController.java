@@ -23,7 +23,8 @@ public class SimulatorController {
                                   @RequestParam double endLat,
                                   @RequestParam double endLng,
                                   @RequestParam(defaultValue = "100") int steps,
-                                  @RequestParam(defaultValue = "1000") long delayMillis) {
+                                  @RequestParam(defaultValue = "1000") long delayMillis,
+                                  @RequestParam(defaultValue = "true") boolean batched) {
 
         // Gen path chung cho tất cả tài xế
         List<Point> path = PathGenerator.generateLinearPath(
@@ -32,7 +33,7 @@ public class SimulatorController {
                 steps
         );
 
-        multiDriverSimulator.simulateAllDrivers(path, delayMillis);
+        multiDriverSimulator.simulateAllDrivers(path, delayMillis, batched);
 
         return "Started simulation for ALL drivers";
     }
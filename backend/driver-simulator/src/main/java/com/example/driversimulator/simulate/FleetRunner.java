@@ -0,0 +1,76 @@
+package com.example.driversimulator.simulate;
+
+import com.example.driver_service.grpc.DriverLocationServiceGrpc;
+import com.example.driver_service.grpc.LocationBatch;
+import com.example.driver_service.grpc.LocationBatchAck;
+import com.example.driversimulator.entity.Point;
+import io.grpc.stub.StreamObserver;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Sends the positions of every simulated driver over a single SendLocationBatch stream,
+ * one LocationBatch per tick.
+ */
+@Component
+public class FleetRunner {
+
+    private final DriverLocationServiceGrpc.DriverLocationServiceStub asyncStub;
+
+    public FleetRunner(DriverLocationServiceGrpc.DriverLocationServiceStub asyncStub) {
+        this.asyncStub = asyncStub;
+    }
+
+    public void simulate(Map<String, List<Point>> paths, long delayMillis) {
+
+        StreamObserver<LocationBatchAck> responseObserver = new StreamObserver<>() {
+            @Override
+            public void onNext(LocationBatchAck ack) {
+                System.out.println("Server ACK batch " + ack.getSequence() + ": " + ack.getApplied() + " applied");
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                System.err.println("gRPC batch stream error: " + t.getMessage());
+            }
+
+            @Override
+            public void onCompleted() {
+                System.out.println("Batch stream completed for " + paths.size() + " drivers");
+            }
+        };
+
+        StreamObserver<LocationBatch> requestObserver = asyncStub.sendLocationBatch(responseObserver);
+
+        int steps = paths.values().stream().mapToInt(List::size).max().orElse(0);
+        LocationBatchEncoder encoder = new LocationBatchEncoder();
+
+        new Thread(() -> {
+            try {
+                for (int step = 0; step < steps; step++) {
+                    long now = System.currentTimeMillis();
+                    encoder.begin(now);
+
+                    for (Map.Entry<String, List<Point>> entry : paths.entrySet()) {
+                        List<Point> path = entry.getValue();
+                        if (step < path.size()) {
+                            encoder.add(entry.getKey(), path.get(step), now);
+                        }
+                    }
+
+                    requestObserver.onNext(encoder.build());
+                    System.out.println("Sent batch step " + step + " for " + paths.size() + " drivers");
+
+                    Thread.sleep(delayMillis);
+                }
+
+                requestObserver.onCompleted();
+
+            } catch (Exception e) {
+                requestObserver.onError(e);
+            }
+        }).start();
+    }
+}
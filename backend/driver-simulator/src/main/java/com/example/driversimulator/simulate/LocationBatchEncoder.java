@@ -0,0 +1,58 @@
+package com.example.driversimulator.simulate;
+
+import com.example.driver_service.grpc.LocationBatch;
+import com.example.driversimulator.entity.Point;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Builds {@link LocationBatch} frames for one stream: keeps the driver-id dictionary
+ * and delta-encodes fixed-point coordinates (degrees * 1e6) and timestamps.
+ */
+public class LocationBatchEncoder {
+
+    private static final double COORDINATE_SCALE = 1e6;
+
+    private final Map<String, Integer> dictionary = new HashMap<>();
+    private long sequence;
+
+    private LocationBatch.Builder builder;
+    private int lastLat;
+    private int lastLng;
+    private long lastTimestamp;
+
+    public void begin(long baseTimestamp) {
+        builder = LocationBatch.newBuilder()
+                .setSequence(++sequence)
+                .setBaseTimestamp(baseTimestamp);
+        lastLat = 0;
+        lastLng = 0;
+        lastTimestamp = baseTimestamp;
+    }
+
+    public void add(String driverId, Point point, long timestamp) {
+        Integer index = dictionary.get(driverId);
+        if (index == null) {
+            index = dictionary.size();
+            dictionary.put(driverId, index);
+            builder.addNewDriverIds(driverId);
+        }
+
+        int lat = (int) Math.round(point.latitude() * COORDINATE_SCALE);
+        int lng = (int) Math.round(point.longitude() * COORDINATE_SCALE);
+
+        builder.addDriverIndex(index)
+                .addLatitudeDelta(lat - lastLat)
+                .addLongitudeDelta(lng - lastLng)
+                .addTimestampDelta((int) (timestamp - lastTimestamp));
+
+        lastLat = lat;
+        lastLng = lng;
+        lastTimestamp = timestamp;
+    }
+
+    public LocationBatch build() {
+        return builder.build();
+    }
+}
@@ -5,7 +5,9 @@ import com.example.driversimulator.dto.DriverResponse;
 import com.example.driversimulator.entity.Point;
 import org.springframework.stereotype.Component;
 
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 @Component
@@ -13,14 +15,17 @@ public class MultiDriverSimulator {
 
     private final DriverClient driverClient;
     private final DriverRunner driverRunner;
+    private final FleetRunner fleetRunner;
 
     public MultiDriverSimulator(DriverClient driverClient,
-                                DriverRunner driverRunner) {
+                                DriverRunner driverRunner,
+                                FleetRunner fleetRunner) {
         this.driverClient = driverClient;
         this.driverRunner = driverRunner;
+        this.fleetRunner = fleetRunner;
     }
 
-    public void simulateAllDrivers(List<Point> basePath, long delayMillis) {
+    public void simulateAllDrivers(List<Point> basePath, long delayMillis, boolean batched) {
 
         // 1) Lấy danh sách driver ID
         List<String> driverIds = driverClient.getAllDrivers()
@@ -31,6 +36,16 @@ public class MultiDriverSimulator {
 
         System.out.println("Fetched driver IDs: " + driverIds);
 
+        // Batched: một stream gRPC duy nhất cho tất cả tài xế
+        if (batched) {
+            Map<String, List<Point>> paths = new LinkedHashMap<>();
+            for (String driverId : driverIds) {
+                paths.put(driverId, generatePathWithOffset(basePath));
+            }
+            fleetRunner.simulate(paths, delayMillis);
+            return;
+        }
+
         // 2) Mỗi driver spawn thread + path riêng biệt
         for (String driverId : driverIds) {
 
@@ -0,0 +1,204 @@
+package com.example.trip_service.cache;
+
+import com.example.trip_service.dto.response.TripResponse;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Read-through cache of trips: a bounded in-process L1 (Caffeine) in front of a Redis L2 shared by all pods.
+ * <p>
+ * Every state transition writes the new trip through both levels and publishes
+ * {@code tripId|version} on {@link #INVALIDATION_CHANNEL}, so other pods drop an older L1 copy.
+ * Trips loaded on a miss are only filled in, without publishing.
+ * Neither level ever replaces a newer version with an older one. Active trips expire quickly;
+ * COMPLETED and CANCELLED trips no longer change and stay much longer.
+ * <p>
+ * Metrics: {@code trip.cache.requests{result=l1_hit|l2_hit|miss}} for the hit ratio, and
+ * {@code trip.cache.stale_reads}, counted by re-reading a sample of hits from the database.
+ */
+@Component
+@Slf4j
+public class TripCache {
+
+    public static final String INVALIDATION_CHANNEL = "trip:cache:invalidate";
+
+    private static final String KEY_PREFIX = "trip:cache:";
+
+    private static final RedisScript<Long> CACHE_TRIP_SCRIPT =
+            RedisScript.of(new ClassPathResource("scripts/cache_trip.lua"), Long.class);
+
+    private final StringRedisTemplate redisTemplate;
+    private final ObjectMapper objectMapper;
+    private final Cache<UUID, TripResponse> local;
+
+    private final long l2ActiveTtlMillis;
+    private final long l2TerminalTtlMillis;
+    private final double staleSampleRate;
+
+    private final Counter l1Hits;
+    private final Counter l2Hits;
+    private final Counter misses;
+    private final Counter staleReads;
+
+    public TripCache(StringRedisTemplate redisTemplate,
+                     ObjectMapper objectMapper,
+                     MeterRegistry meterRegistry,
+                     @Value("${trip.cache.l1.max-size:10000}") long l1MaxSize,
+                     @Value("${trip.cache.l1.active-ttl-ms:2000}") long l1ActiveTtlMillis,
+                     @Value("${trip.cache.l1.terminal-ttl-ms:600000}") long l1TerminalTtlMillis,
+                     @Value("${trip.cache.l2.active-ttl-ms:30000}") long l2ActiveTtlMillis,
+                     @Value("${trip.cache.l2.terminal-ttl-ms:3600000}") long l2TerminalTtlMillis,
+                     @Value("${trip.cache.stale-sample-rate:0.01}") double staleSampleRate) {
+        this.redisTemplate = redisTemplate;
+        this.objectMapper = objectMapper;
+        this.l2ActiveTtlMillis = l2ActiveTtlMillis;
+        this.l2TerminalTtlMillis = l2TerminalTtlMillis;
+        this.staleSampleRate = staleSampleRate;
+
+        this.local = Caffeine.newBuilder()
+                .maximumSize(l1MaxSize)
+                .expireAfter(new Expiry<UUID, TripResponse>() {
+                    @Override
+                    public long expireAfterCreate(UUID id, TripResponse trip, long currentTime) {
+                        return TimeUnit.MILLISECONDS.toNanos(isTerminal(trip) ? l1TerminalTtlMillis : l1ActiveTtlMillis);
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(UUID id, TripResponse trip, long currentTime, long currentDuration) {
+                        return expireAfterCreate(id, trip, currentTime);
+                    }
+
+                    @Override
+                    public long expireAfterRead(UUID id, TripResponse trip, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .build();
+
+        this.l1Hits = requests(meterRegistry, "l1_hit");
+        this.l2Hits = requests(meterRegistry, "l2_hit");
+        this.misses = requests(meterRegistry, "miss");
+        this.staleReads = Counter.builder("trip.cache.stale_reads")
+                .description("Sampled cache hits that were older than the database")
+                .register(meterRegistry);
+    }
+
+    /** The cached trip, or {@code loader}'s result (then cached) when neither level has it. */
+    public TripResponse get(UUID id, Supplier<TripResponse> loader) {
+        TripResponse cached = local.getIfPresent(id);
+        if (cached != null) {
+            l1Hits.increment();
+            return sampleStaleness(cached, loader);
+        }
+
+        cached = readRemote(id);
+        if (cached != null) {
+            l2Hits.increment();
+            putLocal(cached);
+            return sampleStaleness(cached, loader);
+        }
+
+        misses.increment();
+        TripResponse loaded = loader.get();
+        fill(loaded);
+        return loaded;
+    }
+
+    /**
+     * Writes a trip that just changed through both levels and tells the other pods to drop older copies.
+     * Only for state transitions: a plain read must not wake every pod's watchers.
+     */
+    public void put(TripResponse trip) {
+        fill(trip);
+        try {
+            redisTemplate.convertAndSend(INVALIDATION_CHANNEL, trip.getId() + "|" + version(trip));
+        } catch (Exception e) {
+            // Other pods catch up on L1 expiry
+            log.warn("Failed to publish invalidation of trip {}: {}", trip.getId(), e.getMessage());
+        }
+    }
+
+    /** A pod published a newer version of the trip: drop the local copy if it is older. */
+    public void onInvalidated(UUID id, long version) {
+        local.asMap().computeIfPresent(id, (key, cached) -> version(cached) < version ? null : cached);
+    }
+
+    private TripResponse sampleStaleness(TripResponse cached, Supplier<TripResponse> loader) {
+        if (staleSampleRate <= 0 || ThreadLocalRandom.current().nextDouble() >= staleSampleRate) {
+            return cached;
+        }
+
+        TripResponse fresh = loader.get();
+        if (version(fresh) > version(cached)) {
+            staleReads.increment();
+            fill(fresh);
+            return fresh;
+        }
+        return cached;
+    }
+
+    // Caches a trip read from the database in both levels, without publishing: the version guards
+    // keep an older copy from replacing a newer one
+    private void fill(TripResponse trip) {
+        putLocal(trip);
+        try {
+            String json = objectMapper.writeValueAsString(trip);
+            redisTemplate.execute(CACHE_TRIP_SCRIPT, List.of(key(trip.getId())),
+                    json, String.valueOf(version(trip)),
+                    String.valueOf(isTerminal(trip) ? l2TerminalTtlMillis : l2ActiveTtlMillis));
+        } catch (Exception e) {
+            // Redis is only a cache: the database stays correct, other pods catch up on L1 expiry
+            log.warn("Failed to write trip {} to Redis cache: {}", trip.getId(), e.getMessage());
+        }
+    }
+
+    private void putLocal(TripResponse trip) {
+        local.asMap().merge(trip.getId(), trip,
+                (cached, incoming) -> version(incoming) >= version(cached) ? incoming : cached);
+    }
+
+    private TripResponse readRemote(UUID id) {
+        try {
+            String json = redisTemplate.opsForValue().get(key(id));
+            return json != null ? objectMapper.readValue(json, TripResponse.class) : null;
+        } catch (Exception e) {
+            log.warn("Failed to read trip {} from Redis cache: {}", id, e.getMessage());
+            return null;
+        }
+    }
+
+    private static boolean isTerminal(TripResponse trip) {
+        return "COMPLETED".equals(trip.getStatus()) || "CANCELLED".equals(trip.getStatus());
+    }
+
+    private static long version(TripResponse trip) {
+        return trip.getVersion() != null ? trip.getVersion() : 0;
+    }
+
+    private static String key(UUID id) {
+        return KEY_PREFIX + id;
+    }
+
+    private static Counter requests(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("trip.cache.requests")
+                .description("Trip lookups by cache level that answered")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,42 @@
+package com.example.trip_service.config;
+
+import com.example.trip_service.enums.Shard;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadPoolExecutor;
+
+@Configuration
+public class ExecutorConfig {
+
+    // One query per shard per request; when the queue is full the request thread runs its own query
+    @Bean(name = "shardQueryExecutor")
+    public Executor shardQueryExecutor(@Value("${trip.shard.query.concurrency:4}") int concurrency,
+                                       @Value("${trip.shard.query.queue-capacity:100}") int queueCapacity) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(Shard.values().length * concurrency);
+        executor.setMaxPoolSize(Shard.values().length * concurrency);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("shard-query-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.initialize();
+        return executor;
+    }
+
+    // Reloads a changed trip for its long-poll watchers off the Redis pub/sub thread.
+    // When the queue is full the change is dropped and the watchers re-poll after their timeout
+    @Bean(name = "tripWatchExecutor")
+    public Executor tripWatchExecutor(@Value("${trip.watch.executor.threads:4}") int threads,
+                                      @Value("${trip.watch.executor.queue-capacity:1000}") int queueCapacity) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("trip-watch-");
+        executor.initialize();
+        return executor;
+    }
+}
@@ -0,0 +1,22 @@
+package com.example.trip_service.config;
+
+import com.example.trip_service.cache.TripCache;
+import com.example.trip_service.listener.TripCacheInvalidationListener;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+@Configuration
+public class RedisConfig {
+
+    @Bean
+    public RedisMessageListenerContainer redisMessageListenerContainer(RedisConnectionFactory redisConnectionFactory,
+                                                                       TripCacheInvalidationListener tripCacheInvalidationListener) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(redisConnectionFactory);
+        container.addMessageListener(tripCacheInvalidationListener, new ChannelTopic(TripCache.INVALIDATION_CHANNEL));
+        return container;
+    }
+}
@@ -0,0 +1,70 @@
+package com.example.trip_service.config;
+
+import com.example.trip_service.enums.Shard;
+import com.example.trip_service.repository.TripRepository;
+import com.example.trip_service.util.TripIdUtils;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+/**
+ * Routes a trip to its shard on the first try. New trip ids carry their shard
+ * ({@link TripIdUtils}); older ids are looked up on each shard once and then remembered
+ * in a bounded LRU directory.
+ */
+@Component
+@Slf4j
+public class TripShardRouter {
+
+    private final TripRepository tripRepository;
+
+    private final Map<UUID, Shard> legacyDirectory;
+
+    public TripShardRouter(TripRepository tripRepository,
+                           @Value("${trip.shard.legacy-directory-size:10000}") int legacyDirectorySize) {
+        this.tripRepository = tripRepository;
+        this.legacyDirectory = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<UUID, Shard> eldest) {
+                return size() > legacyDirectorySize;
+            }
+        });
+    }
+
+    public Shard resolve(UUID tripId) {
+        Shard shard = TripIdUtils.shardOf(tripId);
+        if (shard != null) {
+            return shard;
+        }
+
+        shard = legacyDirectory.get(tripId);
+        if (shard != null) {
+            return shard;
+        }
+
+        for (Shard candidate : Shard.values()) {
+            if (execute(candidate, () -> tripRepository.existsById(tripId))) {
+                log.debug("Legacy trip {} found on shard {}", tripId, candidate);
+                legacyDirectory.put(tripId, candidate);
+                return candidate;
+            }
+        }
+        throw new RuntimeException("Trip not found with id: " + tripId);
+    }
+
+    /** Runs {@code action} with every DataSource access routed to {@code shard}. */
+    public <T> T execute(Shard shard, Supplier<T> action) {
+        DbContextHolder.setDbType(shard.name());
+        try {
+            return action.get();
+        } finally {
+            DbContextHolder.clearDbType();
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.example.trip_service.controller;
+
+import com.example.trip_service.dto.response.TripResponse;
+import com.example.trip_service.service.ITripService;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.UUID;
+
+// Chỉ cho các service khác gọi trực tiếp, api-gateway không route /api/internal/**
+@RestController
+@RequestMapping("/api/internal/trips")
+public class InternalController {
+
+    private final ITripService tripService;
+
+    public InternalController(ITripService tripService) {
+        this.tripService = tripService;
+    }
+
+    // driver-service báo dispatch không tìm được tài xế
+    @PostMapping("/{id}/expire")
+    public ResponseEntity<TripResponse> expireTrip(@PathVariable("id") String id) {
+        return ResponseEntity.ok(tripService.expireTrip(UUID.fromString(id)));
+    }
+}
@@ -3,11 +3,15 @@ package com.example.trip_service.controller;
 import com.example.trip_service.client.DriverClient;
 import com.example.trip_service.dto.request.CreateTripRequest;
 import com.example.trip_service.dto.request.EstimateFareRequest;
+import com.example.trip_service.dto.response.TripResponse;
+import com.example.trip_service.service.IIdempotencyService;
 import com.example.trip_service.service.IRatingService;
 import com.example.trip_service.service.ITripService;
 import jakarta.validation.Valid;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.DeferredResult;
 
 import java.util.UUID;
 
@@ -21,15 +25,23 @@ public class TripController {
 
     private final DriverClient driverClient;
 
-    public TripController(ITripService tripService, IRatingService ratingService, DriverClient driverClient) {
+    private final IIdempotencyService idempotencyService;
+
+    // Mobile clients send the same key when they retry a request; the first response is replayed
+    private static final String IDEMPOTENCY_KEY = "Idempotency-Key";
+
+    public TripController(ITripService tripService, IRatingService ratingService, DriverClient driverClient,
+                          IIdempotencyService idempotencyService) {
         this.driverClient = driverClient;
+        this.idempotencyService = idempotencyService;
         this.ratingService = ratingService;
         this.tripService = tripService;
     }
 
     @GetMapping
-    public ResponseEntity<?> getAllTrips() {
-        return ResponseEntity.ok(tripService.getAllTrips());
+    public ResponseEntity<?> getAllTrips(@RequestParam(value = "cursor", required = false) String cursor,
+                                         @RequestParam(value = "limit", defaultValue = "50") int limit) {
+        return ResponseEntity.ok(tripService.getTrips(cursor, limit));
     }
 
     @GetMapping("/get-user-request")
@@ -53,8 +65,10 @@ public class TripController {
     }
 
     @PostMapping("/create")
-    public ResponseEntity<?> createTrip(@RequestBody @Valid CreateTripRequest request) {
-        return ResponseEntity.ok(tripService.createTrip(request));
+    public ResponseEntity<?> createTrip(@RequestBody @Valid CreateTripRequest request,
+                                        @RequestHeader(value = IDEMPOTENCY_KEY, required = false) String idempotencyKey) {
+        return idempotencyService.execute(idempotencyKey, "create", request,
+                () -> tripService.createTrip(request));
     }
 
     @GetMapping("/{id}")
@@ -62,31 +76,49 @@ public class TripController {
         return ResponseEntity.ok(tripService.getTripById(UUID.fromString(id)));
     }
 
+    // Long-poll: gửi lại ETag đã nhận trong If-None-Match, trả về khi trip đổi trạng thái hoặc 304 khi hết hạn
+    @GetMapping("/{id}/watch")
+    public DeferredResult<ResponseEntity<TripResponse>> watchTrip(
+            @PathVariable("id") String id,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        return tripService.watchTrip(UUID.fromString(id), parseVersion(ifNoneMatch));
+    }
+
     @PostMapping("/{id}/cancel")
-    public ResponseEntity<?> cancelTrip(@PathVariable("id") String id) {
-        return ResponseEntity.ok(tripService.cancelTrip(UUID.fromString(id)));
+    public ResponseEntity<?> cancelTrip(@PathVariable("id") String id,
+                                        @RequestHeader(value = IDEMPOTENCY_KEY, required = false) String idempotencyKey) {
+        return idempotencyService.execute(idempotencyKey, "cancel:" + id, null,
+                () -> tripService.cancelTrip(UUID.fromString(id)));
     }
 
     @PostMapping("/{id}/accept")
-    public ResponseEntity<?> acceptTrip(@PathVariable("id") String id) {
-        return ResponseEntity.ok(tripService.acceptTrip(UUID.fromString(id)));
+    public ResponseEntity<?> acceptTrip(@PathVariable("id") String id,
+                                        @RequestHeader(value = IDEMPOTENCY_KEY, required = false) String idempotencyKey) {
+        return idempotencyService.execute(idempotencyKey, "accept:" + id, null,
+                () -> tripService.acceptTrip(UUID.fromString(id)));
     }
 
     @PostMapping("/{id}/start")
-    public ResponseEntity<?> startTrip(@PathVariable("id") String id) {
-        return ResponseEntity.ok(tripService.startTrip(UUID.fromString(id)));
+    public ResponseEntity<?> startTrip(@PathVariable("id") String id,
+                                       @RequestHeader(value = IDEMPOTENCY_KEY, required = false) String idempotencyKey) {
+        return idempotencyService.execute(idempotencyKey, "start:" + id, null,
+                () -> tripService.startTrip(UUID.fromString(id)));
     }
 
     @PostMapping("/{id}/complete")
-    public ResponseEntity<?> completeTrip(@PathVariable("id") String id) {
-        return ResponseEntity.ok(tripService.completeTrip(UUID.fromString(id)));
+    public ResponseEntity<?> completeTrip(@PathVariable("id") String id,
+                                          @RequestHeader(value = IDEMPOTENCY_KEY, required = false) String idempotencyKey) {
+        return idempotencyService.execute(idempotencyKey, "complete:" + id, null,
+                () -> tripService.completeTrip(UUID.fromString(id)));
     }
 
     @PostMapping("{id}/rate")
     public ResponseEntity<?> rateTrip(@PathVariable("id") String id,
                                       @RequestParam("rating") int rating,
-                                      @RequestParam("comment") String comment) {
-        return ResponseEntity.ok(ratingService.rateTrip(UUID.fromString(id), rating, comment));
+                                      @RequestParam("comment") String comment,
+                                      @RequestHeader(value = IDEMPOTENCY_KEY, required = false) String idempotencyKey) {
+        return idempotencyService.execute(idempotencyKey, "rate:" + id + ":" + rating + ":" + comment, null,
+                () -> ratingService.rateTrip(UUID.fromString(id), rating, comment));
     }
 
     @GetMapping("/driver/get-nearby-drivers")
@@ -100,4 +132,20 @@ public class TripController {
                 driverClient.getNearbyDrivers(lat, lng, radiusKm, limit)
         );
     }
-}
\ No newline at end of file
+
+    // ETag "<version>", có thể kèm tiền tố W/
+    private static Long parseVersion(String ifNoneMatch) {
+        if (ifNoneMatch == null || ifNoneMatch.isBlank()) {
+            return null;
+        }
+        String tag = ifNoneMatch.trim();
+        if (tag.startsWith("W/")) {
+            tag = tag.substring(2);
+        }
+        try {
+            return Long.parseLong(tag.replace("\"", ""));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
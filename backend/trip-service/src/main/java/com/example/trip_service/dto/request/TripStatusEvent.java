@@ -0,0 +1,25 @@
+package com.example.trip_service.dto.request;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.UUID;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class TripStatusEvent {
+
+    private UUID tripId;
+
+    private UUID driverId; // null when a trip is cancelled before any driver accepted it
+
+    private String status; // ACCEPTED, IN_PROGRESS, COMPLETED or CANCELLED
+
+    private long occurredAt; // epoch milliseconds
+
+    private long version; // the trip's version after this change; consumers order a trip's events by it
+}
@@ -0,0 +1,19 @@
+package com.example.trip_service.dto.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class TripPageResponse {
+
+    private List<TripResponse> items; // newest first
+
+    private String nextCursor; // null on the last page
+}
@@ -40,4 +40,6 @@ public class TripResponse {
     private LocalDateTime completedAt;
 
     private LocalDateTime cancelledAt;
+
+    private Long version; // grows with every change of the trip
 }
\ No newline at end of file
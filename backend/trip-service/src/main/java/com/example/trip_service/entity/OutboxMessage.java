@@ -0,0 +1,42 @@
+package com.example.trip_service.entity;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+
+/**
+ * A RabbitMQ message written in the same transaction as the trip change that caused it,
+ * on the trip's shard. OutboxRelayService publishes and deletes it after commit.
+ */
+@Entity
+@Table(name="trip_outbox")
+@Getter
+@Setter
+public class OutboxMessage {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id; // publish order within a shard
+
+    @Column(name="exchange", nullable = false)
+    private String exchange;
+
+    @Column(name="routing_key", nullable = false)
+    private String routingKey;
+
+    @Column(name="payload_type", nullable = false)
+    private String payloadType; // __TypeId__ header, as Jackson2JsonMessageConverter would set it
+
+    @Column(name="payload", nullable = false, columnDefinition = "text")
+    private String payload; // JSON
+
+    @Column(name="created_at", nullable = false, updatable = false)
+    private LocalDateTime createdAt;
+
+    @PrePersist
+    protected void onCreate() {
+        this.setCreatedAt(LocalDateTime.now());
+    }
+}
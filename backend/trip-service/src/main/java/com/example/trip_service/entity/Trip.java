@@ -4,20 +4,22 @@ import com.example.trip_service.enums.TripStatus;
 import jakarta.persistence.*;
 import lombok.Getter;
 import lombok.Setter;
+import org.springframework.data.domain.Persistable;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.util.UUID;
 
 @Entity
-@Table(name="trip")
+@Table(name="trip", indexes = {
+        @Index(name = "idx_trip_requested_at_id", columnList = "requested_at, id")
+})
 @Getter
 @Setter
-public class Trip {
+public class Trip implements Persistable<UUID> {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.AUTO)
-    private UUID id;
+    private UUID id; // assigned by TripIdUtils, carries the shard
 
     @Column(name="passenger_id", columnDefinition = "uuid", nullable = false)
     private UUID passengerId;
@@ -56,8 +58,28 @@ public class Trip {
     @Column(name="cancelled_at")
     private LocalDateTime cancelledAt; // null if it is completed
 
+    // Bumped by every write, including the conditional UPDATEs of TripRepository
+    @Version
+    @Column(name="version", columnDefinition = "bigint default 0 not null")
+    private long version;
+
+    // The id is assigned before save, so Spring Data cannot tell a new trip by a null id
+    @Transient
+    private boolean persisted;
+
+    @Override
+    public boolean isNew() {
+        return !persisted;
+    }
+
     @PrePersist
     protected void init() {
         this.setRequestedAt(LocalDateTime.now());
     }
-}
\ No newline at end of file
+
+    @PostPersist
+    @PostLoad
+    protected void markPersisted() {
+        this.persisted = true;
+    }
+}
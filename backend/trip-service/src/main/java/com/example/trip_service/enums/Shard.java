@@ -0,0 +1,34 @@
+package com.example.trip_service.enums;
+
+/**
+ * Database shards of trip-service. The name is the {@code DbContextHolder} key of the shard's
+ * DataSource, the code is stored in every trip id created on it (see {@code TripIdUtils}).
+ */
+public enum Shard {
+    VN(1),
+    TH(2);
+
+    private final int code;
+
+    Shard(int code) {
+        this.code = code;
+    }
+
+    public int getCode() {
+        return code;
+    }
+
+    public static Shard fromCode(int code) {
+        for (Shard shard : values()) {
+            if (shard.code == code) {
+                return shard;
+            }
+        }
+        return null;
+    }
+
+    // Pickups east of 102°E go to VN, the rest to TH
+    public static Shard forPickup(double pickupLongitude) {
+        return pickupLongitude >= 102.0 ? VN : TH;
+    }
+}
@@ -0,0 +1,47 @@
+package com.example.trip_service.listener;
+
+import com.example.trip_service.cache.TripCache;
+import com.example.trip_service.service.impl.TripWatchRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+/**
+ * Applies {@code tripId|version} messages from {@link TripCache#INVALIDATION_CHANNEL}: drops the older
+ * local cache entry first, then wakes the long-polls watching the trip on this pod.
+ */
+@Component
+@Slf4j
+public class TripCacheInvalidationListener implements MessageListener {
+
+    private final TripCache tripCache;
+
+    private final TripWatchRegistry tripWatchRegistry;
+
+    public TripCacheInvalidationListener(TripCache tripCache, TripWatchRegistry tripWatchRegistry) {
+        this.tripCache = tripCache;
+        this.tripWatchRegistry = tripWatchRegistry;
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        int separator = body.indexOf('|');
+        UUID tripId;
+        long version;
+        try {
+            tripId = UUID.fromString(body.substring(0, separator));
+            version = Long.parseLong(body.substring(separator + 1));
+        } catch (RuntimeException e) {
+            log.warn("Ignoring malformed cache invalidation: {}", body);
+            return;
+        }
+
+        tripCache.onInvalidated(tripId, version);
+        tripWatchRegistry.onChanged(tripId, version);
+    }
+}
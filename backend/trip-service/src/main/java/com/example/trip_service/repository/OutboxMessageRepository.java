@@ -0,0 +1,17 @@
+package com.example.trip_service.repository;
+
+import com.example.trip_service.entity.OutboxMessage;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface OutboxMessageRepository extends JpaRepository<OutboxMessage, Long> {
+
+    // SKIP LOCKED lets several relays drain the same shard without waiting on each other
+    @Query(value = "SELECT * FROM trip_outbox ORDER BY id LIMIT :limit FOR UPDATE SKIP LOCKED", nativeQuery = true)
+    List<OutboxMessage> lockNextBatch(@Param("limit") int limit);
+}
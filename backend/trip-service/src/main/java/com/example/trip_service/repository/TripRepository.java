@@ -1,9 +1,15 @@
 package com.example.trip_service.repository;
 
 import com.example.trip_service.entity.Trip;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 
@@ -11,4 +17,84 @@ import java.util.UUID;
 public interface TripRepository extends JpaRepository<Trip, UUID> {
 
     Optional<Trip> getTripById(UUID id);
-}
\ No newline at end of file
+
+    Optional<TripView> findViewById(UUID id);
+
+    // Keyset pages, newest first, served by idx_trip_requested_at_id
+    List<TripView> findAllByOrderByRequestedAtDescIdDesc(Pageable pageable);
+
+    @Query("""
+            select t.id as id, t.passengerId as passengerId, t.driverId as driverId, t.status as status,
+                   t.pickupLatitude as pickupLatitude, t.pickupLongitude as pickupLongitude,
+                   t.destinationLatitude as destinationLatitude, t.destinationLongitude as destinationLongitude,
+                   t.fare as fare, t.requestedAt as requestedAt, t.startedAt as startedAt,
+                   t.completedAt as completedAt, t.cancelledAt as cancelledAt, t.version as version
+            from Trip t
+            where t.requestedAt < :requestedAt
+               or (t.requestedAt = :requestedAt and t.id < :id)
+            order by t.requestedAt desc, t.id desc
+            """)
+    List<TripView> findPageBefore(@Param("requestedAt") LocalDateTime requestedAt,
+                                  @Param("id") UUID id,
+                                  Pageable pageable);
+
+    // Conditional transitions: one UPDATE each, the WHERE clause is the state check, and the row count
+    // says whether this call won. Concurrent calls are serialized by the row lock, so only one can match.
+
+    @Modifying
+    @Query("""
+            update Trip t
+            set t.status = com.example.trip_service.enums.TripStatus.ACCEPTED,
+                t.driverId = :driverId, t.version = t.version + 1
+            where t.id = :id
+              and t.status = com.example.trip_service.enums.TripStatus.SEARCHING_DRIVER
+              and t.requestedAt > :requestedAfter
+            """)
+    int accept(@Param("id") UUID id,
+               @Param("driverId") UUID driverId,
+               @Param("requestedAfter") LocalDateTime requestedAfter);
+
+    @Modifying
+    @Query("""
+            update Trip t
+            set t.status = com.example.trip_service.enums.TripStatus.IN_PROGRESS,
+                t.startedAt = :now, t.version = t.version + 1
+            where t.id = :id
+              and t.status = com.example.trip_service.enums.TripStatus.ACCEPTED
+              and t.driverId = :driverId
+            """)
+    int start(@Param("id") UUID id, @Param("driverId") UUID driverId, @Param("now") LocalDateTime now);
+
+    @Modifying
+    @Query("""
+            update Trip t
+            set t.status = com.example.trip_service.enums.TripStatus.COMPLETED,
+                t.completedAt = :now, t.version = t.version + 1
+            where t.id = :id
+              and t.status = com.example.trip_service.enums.TripStatus.IN_PROGRESS
+              and t.driverId = :driverId
+            """)
+    int complete(@Param("id") UUID id, @Param("driverId") UUID driverId, @Param("now") LocalDateTime now);
+
+    @Modifying
+    @Query("""
+            update Trip t
+            set t.status = com.example.trip_service.enums.TripStatus.CANCELLED,
+                t.cancelledAt = :now, t.version = t.version + 1
+            where t.id = :id
+              and t.status not in (com.example.trip_service.enums.TripStatus.COMPLETED,
+                                   com.example.trip_service.enums.TripStatus.CANCELLED)
+            """)
+    int cancel(@Param("id") UUID id, @Param("now") LocalDateTime now);
+
+    // driver-service found no driver: only a trip still searching is cancelled
+    @Modifying
+    @Query("""
+            update Trip t
+            set t.status = com.example.trip_service.enums.TripStatus.CANCELLED,
+                t.cancelledAt = :now, t.version = t.version + 1
+            where t.id = :id
+              and t.status = com.example.trip_service.enums.TripStatus.SEARCHING_DRIVER
+            """)
+    int expire(@Param("id") UUID id, @Param("now") LocalDateTime now);
+}
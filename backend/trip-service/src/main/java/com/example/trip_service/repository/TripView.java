@@ -0,0 +1,42 @@
+package com.example.trip_service.repository;
+
+import com.example.trip_service.enums.TripStatus;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Read-only projection of a trip: Spring Data selects only these columns into a tuple,
+ * so reads skip entity hydration, the persistence context and dirty checking.
+ */
+public interface TripView {
+
+    UUID getId();
+
+    UUID getPassengerId();
+
+    UUID getDriverId();
+
+    TripStatus getStatus();
+
+    Double getPickupLatitude();
+
+    Double getPickupLongitude();
+
+    Double getDestinationLatitude();
+
+    Double getDestinationLongitude();
+
+    BigDecimal getFare();
+
+    LocalDateTime getRequestedAt();
+
+    LocalDateTime getStartedAt();
+
+    LocalDateTime getCompletedAt();
+
+    LocalDateTime getCancelledAt();
+
+    long getVersion();
+}
@@ -0,0 +1,15 @@
+package com.example.trip_service.service;
+
+import org.springframework.http.ResponseEntity;
+
+import java.util.function.Supplier;
+
+public interface IIdempotencyService {
+
+    /**
+     * Runs {@code action} at most once per {@code idempotencyKey} and user, and answers a repeat of the
+     * same request with the stored response. {@code operation} and {@code payload} identify the request:
+     * reusing a key for a different one is rejected. Without a key the action simply runs.
+     */
+    ResponseEntity<?> execute(String idempotencyKey, String operation, Object payload, Supplier<?> action);
+}
@@ -1,8 +1,15 @@
 package com.example.trip_service.service;
 
 import com.example.trip_service.dto.request.TripNotificationRequest;
+import com.example.trip_service.dto.request.TripStatusEvent;
 
+/**
+ * Both methods must run inside the shard transaction of the trip change: the message is
+ * published only if that transaction commits.
+ */
 public interface ITripNotificationService {
 
     void notifyNearbyDrivers(TripNotificationRequest notification);
+
+    void publishStatusChanged(TripStatusEvent event);
 }
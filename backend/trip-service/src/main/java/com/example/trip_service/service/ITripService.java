@@ -3,9 +3,11 @@ package com.example.trip_service.service;
 import com.example.trip_service.dto.request.CreateTripRequest;
 import com.example.trip_service.dto.request.EstimateFareRequest;
 import com.example.trip_service.dto.response.EstimateFareResponse;
+import com.example.trip_service.dto.response.TripPageResponse;
 import com.example.trip_service.dto.response.TripResponse;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.context.request.async.DeferredResult;
 
-import java.util.List;
 import java.util.UUID;
 
 public interface ITripService {
@@ -22,14 +24,26 @@ public interface ITripService {
 
     TripResponse getTripById(UUID id);
 
+    /**
+     * Answers at once if the trip's version differs from {@code knownVersion} (or it is null),
+     * otherwise when the trip changes, or with 304 Not Modified after the watch timeout.
+     */
+    DeferredResult<ResponseEntity<TripResponse>> watchTrip(UUID id, Long knownVersion);
+
     TripResponse cancelTrip(UUID id);
 
+    /**
+     * Called by driver-service when its dispatch found no driver: cancels the trip if it is still
+     * SEARCHING_DRIVER, otherwise returns it unchanged.
+     */
+    TripResponse expireTrip(UUID id);
+
     TripResponse acceptTrip(UUID id);
 
     TripResponse completeTrip(UUID id);
 
     TripResponse startTrip(UUID id);
 
-    List<TripResponse> getAllTrips();
+    TripPageResponse getTrips(String cursor, int limit);
 
 }
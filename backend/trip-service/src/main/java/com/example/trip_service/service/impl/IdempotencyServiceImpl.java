@@ -0,0 +1,144 @@
+package com.example.trip_service.service.impl;
+
+import com.example.trip_service.security.UserContext;
+import com.example.trip_service.service.IIdempotencyService;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+/**
+ * Idempotency keys in Redis, one string per key with a TTL:
+ * <ul>
+ *     <li>{@code P|<fingerprint>} while the first request runs; a concurrent repeat gets 409</li>
+ *     <li>{@code D|<fingerprint>|<response JSON>} once it succeeded; a repeat gets the stored response</li>
+ * </ul>
+ * A failed request removes its key, so the client can retry it. The fingerprint is a truncated
+ * SHA-256 of the operation and payload.
+ */
+@Service
+@Slf4j
+public class IdempotencyServiceImpl implements IIdempotencyService {
+
+    public static final String REPLAYED_HEADER = "Idempotent-Replayed";
+
+    private static final String KEY_PREFIX = "idempotency:";
+    private static final int MAX_KEY_LENGTH = 255;
+
+    private final StringRedisTemplate redisTemplate;
+    private final ObjectMapper objectMapper;
+    private final Duration ttl;
+    private final Duration pendingTtl;
+
+    public IdempotencyServiceImpl(StringRedisTemplate redisTemplate,
+                                  ObjectMapper objectMapper,
+                                  @Value("${trip.idempotency.ttl-seconds:86400}") long ttlSeconds,
+                                  @Value("${trip.idempotency.pending-ttl-seconds:60}") long pendingTtlSeconds) {
+        this.redisTemplate = redisTemplate;
+        this.objectMapper = objectMapper;
+        this.ttl = Duration.ofSeconds(ttlSeconds);
+        this.pendingTtl = Duration.ofSeconds(pendingTtlSeconds);
+    }
+
+    @Override
+    public ResponseEntity<?> execute(String idempotencyKey, String operation, Object payload, Supplier<?> action) {
+        if (idempotencyKey == null || idempotencyKey.isBlank()) {
+            return ResponseEntity.ok(action.get());
+        }
+        if (idempotencyKey.length() > MAX_KEY_LENGTH) {
+            return error(HttpStatus.BAD_REQUEST, "Idempotency-Key must be at most " + MAX_KEY_LENGTH + " characters");
+        }
+
+        String key = redisKey(idempotencyKey);
+        String fingerprint = fingerprint(operation, payload);
+
+        Boolean reserved;
+        try {
+            reserved = redisTemplate.opsForValue().setIfAbsent(key, "P|" + fingerprint, pendingTtl);
+        } catch (Exception e) {
+            // Redis down: serve the request rather than fail it; only retries lose their protection
+            log.warn("Idempotency store unavailable, running {} without it: {}", operation, e.getMessage());
+            return ResponseEntity.ok(action.get());
+        }
+
+        if (!Boolean.TRUE.equals(reserved)) {
+            return replay(key, fingerprint);
+        }
+
+        Object result;
+        try {
+            result = action.get();
+        } catch (RuntimeException e) {
+            redisTemplate.delete(key);
+            throw e;
+        }
+
+        try {
+            redisTemplate.opsForValue().set(key, "D|" + fingerprint + "|" + objectMapper.writeValueAsString(result), ttl);
+        } catch (Exception e) {
+            log.warn("Failed to store idempotent response of {}: {}", operation, e.getMessage());
+        }
+        return ResponseEntity.ok(result);
+    }
+
+    private ResponseEntity<?> replay(String key, String fingerprint) {
+        String stored = redisTemplate.opsForValue().get(key);
+        if (stored == null) {
+            // Expired or failed between the two calls: the client may retry right away
+            return error(HttpStatus.CONFLICT, "A request with this Idempotency-Key is being retried, try again");
+        }
+
+        String[] parts = stored.split("\\|", 3);
+        if (!parts[1].equals(fingerprint)) {
+            return error(HttpStatus.UNPROCESSABLE_ENTITY, "Idempotency-Key was already used for a different request");
+        }
+        if ("P".equals(parts[0])) {
+            return error(HttpStatus.CONFLICT, "A request with this Idempotency-Key is still being processed");
+        }
+
+        return ResponseEntity.ok()
+                .header(REPLAYED_HEADER, "true")
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(parts[2]);
+    }
+
+    private String fingerprint(String operation, Object payload) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(operation.getBytes(StandardCharsets.UTF_8));
+            if (payload != null) {
+                digest.update(objectMapper.writeValueAsBytes(payload));
+            }
+            return HexFormat.of().formatHex(digest.digest(), 0, 16);
+        } catch (NoSuchAlgorithmException | JsonProcessingException e) {
+            throw new IllegalStateException("Cannot fingerprint " + operation, e);
+        }
+    }
+
+    // Keys are scoped per user, so two users can never replay each other's responses
+    private static String redisKey(String idempotencyKey) {
+        UUID userId = UserContext.getUserId();
+        return KEY_PREFIX + (userId != null ? userId : "anonymous") + ":" + idempotencyKey;
+    }
+
+    private static ResponseEntity<Map<String, Object>> error(HttpStatus status, String message) {
+        return ResponseEntity.status(status).body(Map.of(
+                "status", status.value(),
+                "error", status.getReasonPhrase(),
+                "message", message));
+    }
+}
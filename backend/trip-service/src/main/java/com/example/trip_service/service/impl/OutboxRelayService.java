@@ -0,0 +1,102 @@
+package com.example.trip_service.service.impl;
+
+import com.example.trip_service.config.TripShardRouter;
+import com.example.trip_service.entity.OutboxMessage;
+import com.example.trip_service.enums.Shard;
+import com.example.trip_service.repository.OutboxMessageRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Drains the outbox of every shard: locks a batch with SKIP LOCKED, publishes it with publisher
+ * confirms and deletes the rows in the same transaction. A nack or confirm timeout rolls the
+ * transaction back and the batch is retried on the next run, so delivery is at-least-once.
+ */
+@Service
+@Slf4j
+public class OutboxRelayService {
+
+    private final OutboxMessageRepository outboxMessageRepository;
+    private final RabbitTemplate rabbitTemplate;
+    private final TripShardRouter shardRouter;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${trip.outbox.relay.batch-size:100}")
+    private int batchSize;
+
+    @Value("${trip.outbox.relay.max-batches:20}")
+    private int maxBatches;
+
+    @Value("${trip.outbox.relay.confirm-timeout-ms:5000}")
+    private long confirmTimeoutMillis;
+
+    public OutboxRelayService(OutboxMessageRepository outboxMessageRepository,
+                              RabbitTemplate rabbitTemplate,
+                              TripShardRouter shardRouter,
+                              PlatformTransactionManager transactionManager) {
+        this.outboxMessageRepository = outboxMessageRepository;
+        this.rabbitTemplate = rabbitTemplate;
+        this.shardRouter = shardRouter;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @Scheduled(fixedDelayString = "${trip.outbox.relay.interval-ms:200}")
+    public void relay() {
+        for (Shard shard : Shard.values()) {
+            try {
+                int relayed = 0;
+                for (int i = 0; i < maxBatches; i++) {
+                    int published = shardRouter.execute(shard, this::relayBatch);
+                    relayed += published;
+                    if (published < batchSize) {
+                        break;
+                    }
+                }
+                if (relayed > 0) {
+                    log.debug("Relayed {} outbox messages from shard {}", relayed, shard);
+                }
+            } catch (Exception e) {
+                log.error("Error relaying outbox of shard {}: {}", shard, e.getMessage(), e);
+            }
+        }
+    }
+
+    private int relayBatch() {
+        Integer published = transactionTemplate.execute(status -> {
+            List<OutboxMessage> batch = outboxMessageRepository.lockNextBatch(batchSize);
+            if (batch.isEmpty()) {
+                return 0;
+            }
+
+            rabbitTemplate.invoke(operations -> {
+                for (OutboxMessage message : batch) {
+                    operations.send(message.getExchange(), message.getRoutingKey(), toAmqpMessage(message));
+                }
+                operations.waitForConfirmsOrDie(confirmTimeoutMillis);
+                return null;
+            });
+
+            outboxMessageRepository.deleteAllInBatch(batch);
+            return batch.size();
+        });
+        return published != null ? published : 0;
+    }
+
+    private static Message toAmqpMessage(OutboxMessage message) {
+        MessageProperties properties = new MessageProperties();
+        properties.setContentType(MessageProperties.CONTENT_TYPE_JSON);
+        properties.setContentEncoding(StandardCharsets.UTF_8.name());
+        properties.setHeader("__TypeId__", message.getPayloadType());
+        return new Message(message.getPayload().getBytes(StandardCharsets.UTF_8), properties);
+    }
+}
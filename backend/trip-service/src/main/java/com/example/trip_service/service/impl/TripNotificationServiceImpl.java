@@ -1,17 +1,27 @@
 package com.example.trip_service.service.impl;
 
 import com.example.trip_service.dto.request.TripNotificationRequest;
+import com.example.trip_service.dto.request.TripStatusEvent;
+import com.example.trip_service.entity.OutboxMessage;
+import com.example.trip_service.repository.OutboxMessageRepository;
 import com.example.trip_service.service.ITripNotificationService;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+/**
+ * Writes trip messages to the outbox of the current shard transaction; OutboxRelayService
+ * publishes them once the transaction has committed.
+ */
 @Service
 @Slf4j
 public class TripNotificationServiceImpl implements ITripNotificationService {
 
-    private final RabbitTemplate rabbitTemplate;
+    private final OutboxMessageRepository outboxMessageRepository;
+
+    private final ObjectMapper objectMapper;
 
     @Value("${rabbitmq.exchange.trip}")
     private String tripExchange;
@@ -19,18 +29,42 @@ public class TripNotificationServiceImpl implements ITripNotificationService {
     @Value("${rabbitmq.routing-key.trip-notification}")
     private String tripNotificationRoutingKey;
 
-    public TripNotificationServiceImpl(RabbitTemplate rabbitTemplate) {
-        this.rabbitTemplate = rabbitTemplate;
+    @Value("${rabbitmq.routing-key.trip-status}")
+    private String tripStatusRoutingKey;
+
+    public TripNotificationServiceImpl(OutboxMessageRepository outboxMessageRepository, ObjectMapper objectMapper) {
+        this.outboxMessageRepository = outboxMessageRepository;
+        this.objectMapper = objectMapper;
     }
 
     @Override
     public void notifyNearbyDrivers(TripNotificationRequest notification) {
-        log.info("Publishing trip notification to RabbitMQ: tripId={}, passengerId={}", 
+        enqueue(tripNotificationRoutingKey, notification);
+
+        log.info("Trip notification queued in outbox: tripId={}, passengerId={}",
                 notification.getTripId(), notification.getPassengerId());
-        
-        rabbitTemplate.convertAndSend(tripExchange, tripNotificationRoutingKey, notification);
-        
-        log.info("Trip notification published successfully to exchange={}, routingKey={}", 
-                tripExchange, tripNotificationRoutingKey);
+    }
+
+    @Override
+    public void publishStatusChanged(TripStatusEvent event) {
+        // Routing key trip.status.<status>, vd trip.status.accepted
+        String routingKey = tripStatusRoutingKey + "." + event.getStatus().toLowerCase();
+        enqueue(routingKey, event);
+
+        log.info("Trip status event queued in outbox: tripId={}, driverId={}, status={}",
+                event.getTripId(), event.getDriverId(), event.getStatus());
+    }
+
+    private void enqueue(String routingKey, Object payload) {
+        OutboxMessage message = new OutboxMessage();
+        message.setExchange(tripExchange);
+        message.setRoutingKey(routingKey);
+        message.setPayloadType(payload.getClass().getName());
+        try {
+            message.setPayload(objectMapper.writeValueAsString(payload));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Cannot serialize " + payload.getClass().getSimpleName(), e);
+        }
+        outboxMessageRepository.save(message);
     }
 }
@@ -3,34 +3,52 @@ package com.example.trip_service.service.impl;
 import com.example.trip_service.aop.driverAuth.RequireDriver;
 import com.example.trip_service.aop.passengerAuth.RequirePassenger;
 import com.example.trip_service.aop.userAuth.RequireUser;
+import com.example.trip_service.cache.TripCache;
 import com.example.trip_service.client.DriverClient;
 import com.example.trip_service.dto.request.CreateTripRequest;
 import com.example.trip_service.dto.request.EstimateFareRequest;
 import com.example.trip_service.dto.request.TripNotificationRequest;
+import com.example.trip_service.dto.request.TripStatusEvent;
 import com.example.trip_service.dto.response.EstimateFareResponse;
 import com.example.trip_service.dto.response.NearbyDriverResponse;
+import com.example.trip_service.dto.response.TripPageResponse;
 import com.example.trip_service.dto.response.TripResponse;
 import com.example.trip_service.entity.Trip;
+import com.example.trip_service.enums.Shard;
 import com.example.trip_service.enums.TripStatus;
 import com.example.trip_service.repository.TripRepository;
+import com.example.trip_service.repository.TripView;
 import com.example.trip_service.service.ITripNotificationService;
 import com.example.trip_service.service.ITripService;
 import com.example.trip_service.util.PricingUtils;
 import com.example.trip_service.util.SecurityUtil;
+import com.example.trip_service.util.TripIdUtils;
 import lombok.extern.slf4j.Slf4j;
-import com.example.trip_service.config.DbContextHolder;
+import com.example.trip_service.config.TripShardRouter;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionCallback;
 import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.context.request.async.DeferredResult;
 
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Comparator;
 
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 
 import java.util.UUID;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 
 @Service
 @Slf4j
@@ -40,15 +58,47 @@ public class TripServiceImpl implements ITripService {
     private final ITripNotificationService tripNotificationService;
     private final DriverClient driverClient;
     private final TransactionTemplate transactionTemplate;
+    private final TransactionTemplate readOnlyTransactionTemplate;
+    private final TripShardRouter shardRouter;
+    private final Executor shardQueryExecutor;
+    private final TripCache tripCache;
+    private final TripWatchRegistry tripWatchRegistry;
+
+    private static final int MAX_PAGE_SIZE = 200;
+
+    // Same order as Postgres: requested_at desc, then uuid desc compared as unsigned bytes
+    private static final Comparator<TripResponse> NEWEST_FIRST = Comparator
+            .comparing(TripResponse::getRequestedAt)
+            .thenComparing(TripResponse::getId, TripServiceImpl::compareUnsigned)
+            .reversed();
+
+    // driver-service cascades offers across several drivers and rounds, so a trip stays acceptable
+    // for the whole dispatch, not just the first 15-second offer
+    @Value("${trip.dispatch.accept-window-seconds:120}")
+    private long acceptWindowSeconds;
+
+    @Value("${trip.watch.timeout-ms:25000}")
+    private long watchTimeoutMillis;
 
     public TripServiceImpl(TripRepository tripRepository, 
                           ITripNotificationService tripNotificationService,
                           DriverClient driverClient,
-                          PlatformTransactionManager transactionManager) {
+                          PlatformTransactionManager transactionManager,
+                          TripShardRouter shardRouter,
+                          @Qualifier("shardQueryExecutor") Executor shardQueryExecutor,
+                          TripCache tripCache,
+                          TripWatchRegistry tripWatchRegistry) {
         this.tripRepository = tripRepository;
         this.tripNotificationService = tripNotificationService;
         this.driverClient = driverClient;
         this.transactionTemplate = new TransactionTemplate(transactionManager);
+        // Read-only: Hibernate flush mode MANUAL and a read-only JDBC connection, nothing is ever written
+        this.readOnlyTransactionTemplate = new TransactionTemplate(transactionManager);
+        this.readOnlyTransactionTemplate.setReadOnly(true);
+        this.shardRouter = shardRouter;
+        this.shardQueryExecutor = shardQueryExecutor;
+        this.tripCache = tripCache;
+        this.tripWatchRegistry = tripWatchRegistry;
     }
 
     @Override
@@ -73,79 +123,76 @@ public class TripServiceImpl implements ITripService {
     @Override
     @RequirePassenger
     public TripResponse createTrip(CreateTripRequest request) {
-        // Determine Shard
-        if (request.getPickupLongitude() >= 102.0) {
-            DbContextHolder.setDbType("VN");
-        } else {
-            DbContextHolder.setDbType("TH");
-        }
+        // Determine Shard: the trip id records it, so later lookups go straight there
+        Shard shard = Shard.forPickup(request.getPickupLongitude());
+        UUID passengerId = SecurityUtil.getCurrentUserId();
 
-        try {
-            return transactionTemplate.execute(status -> {
-                Trip trip = new Trip();
-
-                trip.setPassengerId(SecurityUtil.getCurrentUserId());
-                trip.setPickupLatitude(request.getPickupLatitude());
-                trip.setPickupLongitude(request.getPickupLongitude());
-                trip.setDestinationLatitude(request.getDestinationLatitude());
-                trip.setDestinationLongitude(request.getDestinationLongitude());
-                trip.setFare(request.getEstimatedFare());
-                trip.setStatus(TripStatus.SEARCHING_DRIVER);
-
-                System.out.println("Trip before save: " + trip.getId() + ", request: " + trip.getRequestedAt());
-
-                TripResponse tripResponse = getTripResponse(trip);
-
-                // Get nearby drivers
-                List<NearbyDriverResponse> nearbyDrivers = driverClient.getNearbyDrivers(
-                        request.getPickupLatitude(),
-                        request.getPickupLongitude(),
-                        3.0,
-                        10
-                );
-
-                // Get only the nearest driver (first in the list, sorted by distance)
-                List<String> nearbyDriverIds = nearbyDrivers.stream()
-                        .limit(1)  // Only take the nearest driver
-                        .map(NearbyDriverResponse::getDriverId)
-                        .toList();
-
-                // Calculate distance for notification
-                EstimateFareRequest estimateFareRequest = new EstimateFareRequest();
-                estimateFareRequest.setPickupLatitude(request.getPickupLatitude());
-                estimateFareRequest.setPickupLongitude(request.getPickupLongitude());
-                estimateFareRequest.setDestinationLatitude(request.getDestinationLatitude());
-                estimateFareRequest.setDestinationLongitude(request.getDestinationLongitude());
-                Double distanceKm = PricingUtils.calculateDistanceInKm(estimateFareRequest);
-
-                // Publish trip notification to RabbitMQ for nearby drivers
-                TripNotificationRequest notification = TripNotificationRequest.builder()
-                        .tripId(tripResponse.getId())
-                        .passengerId(tripResponse.getPassengerId())
-                        .pickupLatitude(request.getPickupLatitude())
-                        .pickupLongitude(request.getPickupLongitude())
-                        .destinationLatitude(request.getDestinationLatitude())
-                        .destinationLongitude(request.getDestinationLongitude())
-                        .estimatedFare(request.getEstimatedFare())
-                        .distanceKm(distanceKm)
-                        .requestedAt(LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME))
-                        .nearbyDriverIds(nearbyDriverIds)
-                        .build();
-
-                // Only send notification if there are nearby drivers
-                if (!nearbyDriverIds.isEmpty()) {
-                    tripNotificationService.notifyNearbyDrivers(notification);
-                    log.info("Trip {} created and notification sent to RabbitMQ for nearest driver: {}",
-                            tripResponse.getId(), nearbyDriverIds.get(0));
-                } else {
-                    log.warn("Trip {} created but no drivers to notify", tripResponse.getId());
-                }
+        UUID tripId = TripIdUtils.newTripId(shard);
 
-                return tripResponse;
-            });
-        } finally {
-            DbContextHolder.clearDbType();
+        // Get nearby drivers outside of any transaction; the outbox row needs them, so nothing can overlap
+        List<NearbyDriverResponse> nearbyDrivers;
+        try {
+            nearbyDrivers = driverClient.getNearbyDrivers(
+                    request.getPickupLatitude(),
+                    request.getPickupLongitude(),
+                    3.0,
+                    10
+            );
+        } catch (Exception e) {
+            // Not fatal: driver-service widens the search radius itself
+            log.warn("Nearby driver lookup failed for pickup ({}, {}): {}",
+                    request.getPickupLatitude(), request.getPickupLongitude(), e.getMessage());
+            nearbyDrivers = List.of();
         }
+
+        // Calculate distance for notification
+        EstimateFareRequest estimateFareRequest = new EstimateFareRequest();
+        estimateFareRequest.setPickupLatitude(request.getPickupLatitude());
+        estimateFareRequest.setPickupLongitude(request.getPickupLongitude());
+        estimateFareRequest.setDestinationLatitude(request.getDestinationLatitude());
+        estimateFareRequest.setDestinationLongitude(request.getDestinationLongitude());
+        Double distanceKm = PricingUtils.calculateDistanceInKm(estimateFareRequest);
+
+        // All candidates, nearest first: driver-service dispatches them in order
+        List<String> nearbyDriverIds = nearbyDrivers.stream()
+                .map(NearbyDriverResponse::getDriverId)
+                .toList();
+
+        TripNotificationRequest notification = TripNotificationRequest.builder()
+                .tripId(tripId)
+                .passengerId(passengerId)
+                .pickupLatitude(request.getPickupLatitude())
+                .pickupLongitude(request.getPickupLongitude())
+                .destinationLatitude(request.getDestinationLatitude())
+                .destinationLongitude(request.getDestinationLongitude())
+                .estimatedFare(request.getEstimatedFare())
+                .distanceKm(distanceKm)
+                .requestedAt(LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME))
+                .nearbyDriverIds(nearbyDriverIds)
+                .build();
+
+        // One short transaction: the trip INSERT and its outbox row commit or roll back together
+        TripResponse tripResponse = shardRouter.execute(shard, () -> transactionTemplate.execute(status -> {
+            Trip trip = new Trip();
+
+            trip.setId(tripId);
+            trip.setPassengerId(passengerId);
+            trip.setPickupLatitude(request.getPickupLatitude());
+            trip.setPickupLongitude(request.getPickupLongitude());
+            trip.setDestinationLatitude(request.getDestinationLatitude());
+            trip.setDestinationLongitude(request.getDestinationLongitude());
+            trip.setFare(request.getEstimatedFare());
+            trip.setStatus(TripStatus.SEARCHING_DRIVER);
+
+            TripResponse created = toTripResponse(tripRepository.save(trip));
+
+            // Always publish: with no nearby driver, driver-service widens the search radius itself
+            tripNotificationService.notifyNearbyDrivers(notification);
+            return created;
+        }));
+
+        log.info("Trip {} created with {} candidate drivers", tripResponse.getId(), nearbyDriverIds.size());
+        return writeThrough(tripResponse);
     }
 
     @Override
@@ -163,69 +210,64 @@ public class TripServiceImpl implements ITripService {
     @Override
     @RequireUser
     public TripResponse getTripById(UUID id) {
-        // Try VN
-        DbContextHolder.setDbType("VN");
-        try {
-            return transactionTemplate.execute(status -> {
-                Trip trip = tripRepository.findById(id)
-                        .orElseThrow(() -> new RuntimeException("VN-Trip not found with id: " + id));
-                return getTripResponse(trip);
-            });
-        } catch (Exception e) {
-            // Try TH
-            DbContextHolder.setDbType("TH");
-            try {
-                return transactionTemplate.execute(status -> {
-                    Trip trip = tripRepository.findById(id)
-                            .orElseThrow(() -> new RuntimeException("TH-Trip not found with id: " + id));
-                    return getTripResponse(trip);
-                });
-            } finally {
-                DbContextHolder.clearDbType();
-            }
-        }
+        return loadTrip(id);
     }
 
     @Override
-    @RequirePassenger
-    public TripResponse cancelTrip(UUID id) {
-        // Try VN
-        DbContextHolder.setDbType("VN");
-        try {
-            return transactionTemplate.execute(status -> {
-                Trip trip = tripRepository.findById(id)
-                        .orElseThrow(() -> new RuntimeException("Trip not found with id: " + id));
+    @RequireUser
+    public DeferredResult<ResponseEntity<TripResponse>> watchTrip(UUID id, Long knownVersion) {
+        DeferredResult<ResponseEntity<TripResponse>> result = new DeferredResult<>(watchTimeoutMillis);
 
-                if (trip.getStatus() == TripStatus.COMPLETED || trip.getStatus() == TripStatus.CANCELLED) {
-                    throw new RuntimeException("Cannot cancel a completed or already cancelled trip");
-                }
+        TripResponse current = loadTrip(id);
+        if (knownVersion == null || current.getVersion() != knownVersion.longValue()) {
+            result.setResult(TripWatchRegistry.changed(current));
+            return result;
+        }
 
-                trip.setStatus(TripStatus.CANCELLED);
-                trip.setCancelledAt(LocalDateTime.now());
+        tripWatchRegistry.register(id, knownVersion, result, () -> loadTrip(id));
 
-                return getTripResponse(trip);
-            });
-        } catch (Exception e) {
-            // Try TH
-            DbContextHolder.setDbType("TH");
-            try {
-                return transactionTemplate.execute(status -> {
-                    Trip trip = tripRepository.findById(id)
-                            .orElseThrow(() -> new RuntimeException("Trip not found with id: " + id));
-
-                    if (trip.getStatus() == TripStatus.COMPLETED || trip.getStatus() == TripStatus.CANCELLED) {
-                        throw new RuntimeException("Cannot cancel a completed or already cancelled trip");
-                    }
+        // The trip may have changed between the read above and the registration
+        TripResponse latest = loadTrip(id);
+        if (latest.getVersion() != knownVersion.longValue()) {
+            result.setResult(TripWatchRegistry.changed(latest));
+        }
+        return result;
+    }
 
-                    trip.setStatus(TripStatus.CANCELLED);
-                    trip.setCancelledAt(LocalDateTime.now());
+    // Không qua @RequireUser: cũng được gọi từ luồng pub/sub khi đánh thức watcher
+    private TripResponse loadTrip(UUID id) {
+        return tripCache.get(id, () -> inTripShard(id, readOnlyTransactionTemplate, status ->
+                tripRepository.findViewById(id)
+                        .map(this::toTripResponse)
+                        .orElseThrow(() -> new RuntimeException("Trip not found with id: " + id))));
+    }
 
-                    return getTripResponse(trip);
-                });
-            } finally {
-                DbContextHolder.clearDbType();
+    @Override
+    @RequirePassenger
+    public TripResponse cancelTrip(UUID id) {
+        return writeThrough(inTripShard(id, status -> {
+            if (tripRepository.cancel(id, LocalDateTime.now()) == 0) {
+                findView(id);
+                throw new RuntimeException("Cannot cancel a completed or already cancelled trip");
             }
+
+            return publishStatusChanged(toTripResponse(findView(id)));
+        }));
+    }
+
+    @Override
+    public TripResponse expireTrip(UUID id) {
+        TripResponse expired = inTripShard(id, status -> tripRepository.expire(id, LocalDateTime.now()) == 0
+                ? null
+                : publishStatusChanged(toTripResponse(findView(id))));
+
+        // Đã rời SEARCHING_DRIVER (accept, cancel hoặc lần gọi trước): không đổi gì
+        if (expired == null) {
+            return loadTrip(id);
         }
+
+        log.info("Trip {} cancelled: no driver found", id);
+        return writeThrough(expired);
     }
 
     @Override
@@ -233,51 +275,18 @@ public class TripServiceImpl implements ITripService {
     public TripResponse completeTrip(UUID id) {
         UUID driverId = SecurityUtil.getCurrentUserId();
 
-        // Try VN
-        DbContextHolder.setDbType("VN");
-        try {
-            return transactionTemplate.execute(status -> {
-                Trip trip = tripRepository.findById(id)
-                        .orElseThrow(() -> new RuntimeException("Trip not found with id: " + id));
+        return writeThrough(inTripShard(id, status -> {
+            if (tripRepository.complete(id, driverId, LocalDateTime.now()) == 0) {
+                TripView trip = findView(id);
 
                 if (trip.getStatus() != TripStatus.IN_PROGRESS) {
                     throw new RuntimeException("Trip is not in progress and cannot be completed");
                 }
-
-                if (!trip.getDriverId().equals(driverId)) {
-                    throw new RuntimeException("You are not authorized to complete this trip");
-                }
-
-                trip.setStatus(TripStatus.COMPLETED);
-                trip.setCompletedAt(LocalDateTime.now());
-
-                return getTripResponse(trip);
-            });
-        } catch (Exception e) {
-            // Try TH
-            DbContextHolder.setDbType("TH");
-            try {
-                return transactionTemplate.execute(status -> {
-                    Trip trip = tripRepository.findById(id)
-                            .orElseThrow(() -> new RuntimeException("Trip not found with id: " + id));
-
-                    if (trip.getStatus() != TripStatus.IN_PROGRESS) {
-                        throw new RuntimeException("Trip is not in progress and cannot be completed");
-                    }
-
-                    if (!trip.getDriverId().equals(driverId)) {
-                        throw new RuntimeException("You are not authorized to complete this trip");
-                    }
-
-                    trip.setStatus(TripStatus.COMPLETED);
-                    trip.setCompletedAt(LocalDateTime.now());
-
-                    return getTripResponse(trip);
-                });
-            } finally {
-                DbContextHolder.clearDbType();
+                throw new RuntimeException("You are not authorized to complete this trip");
             }
-        }
+
+            return publishStatusChanged(toTripResponse(findView(id)));
+        }));
     }
 
     @Override
@@ -285,51 +294,18 @@ public class TripServiceImpl implements ITripService {
     public TripResponse startTrip(UUID id) {
         UUID driverId = SecurityUtil.getCurrentUserId();
 
-        // Try VN
-        DbContextHolder.setDbType("VN");
-        try {
-            return transactionTemplate.execute(status -> {
-                Trip trip = tripRepository.findById(id)
-                        .orElseThrow(() -> new RuntimeException("Trip not found with id: " + id));
+        return writeThrough(inTripShard(id, status -> {
+            if (tripRepository.start(id, driverId, LocalDateTime.now()) == 0) {
+                TripView trip = findView(id);
 
                 if (trip.getStatus() != TripStatus.ACCEPTED) {
                     throw new RuntimeException("Trip is not accepted and cannot be started");
                 }
-
-                if (!trip.getDriverId().equals(driverId)) {
-                    throw new RuntimeException("You are not authorized to start this trip");
-                }
-
-                trip.setStatus(TripStatus.IN_PROGRESS);
-                trip.setStartedAt(LocalDateTime.now());
-
-                return getTripResponse(trip);
-            });
-        } catch (Exception e) {
-            // Try TH
-            DbContextHolder.setDbType("TH");
-            try {
-                return transactionTemplate.execute(status -> {
-                    Trip trip = tripRepository.findById(id)
-                            .orElseThrow(() -> new RuntimeException("Trip not found with id: " + id));
-
-                    if (trip.getStatus() != TripStatus.ACCEPTED) {
-                        throw new RuntimeException("Trip is not accepted and cannot be started");
-                    }
-
-                    if (!trip.getDriverId().equals(driverId)) {
-                        throw new RuntimeException("You are not authorized to start this trip");
-                    }
-
-                    trip.setStatus(TripStatus.IN_PROGRESS);
-                    trip.setStartedAt(LocalDateTime.now());
-
-                    return getTripResponse(trip);
-                });
-            } finally {
-                DbContextHolder.clearDbType();
+                throw new RuntimeException("You are not authorized to start this trip");
             }
-        }
+
+            return publishStatusChanged(toTripResponse(findView(id)));
+        }));
     }
 
     @Override
@@ -337,153 +313,155 @@ public class TripServiceImpl implements ITripService {
     public TripResponse acceptTrip(UUID id) {
         UUID driverId = SecurityUtil.getCurrentUserId();
 
-        // Try VN
-        DbContextHolder.setDbType("VN");
-        try {
-            return transactionTemplate.execute(status -> {
-
-                System.out.println("[VN] Checking trip " + id + " for driver " + driverId);
-
-                Trip trip = tripRepository.findById(id).orElse(null);
-
-                if (trip == null) {
-                    System.out.println("[VN] Trip not found: " + id);
-                    throw new TripNotFoundException("VN-Trip not found with id: " + id);
-                }
-
-                System.out.println("[VN] Trip found with status = " + trip.getStatus());
+        return writeThrough(inTripShard(id, status -> {
+            // Check TTL in the same UPDATE: only trips requested within the accept window match
+            LocalDateTime now = LocalDateTime.now();
+            if (tripRepository.accept(id, driverId, now.minusSeconds(acceptWindowSeconds)) == 0) {
+                TripView trip = findView(id);
 
                 if (trip.getStatus() != TripStatus.SEARCHING_DRIVER) {
-                    System.out.println("[VN] Trip is NOT available. Current status: " + trip.getStatus());
-                    throw new TripNotAvailableException("VN-Trip is not available for acceptance");
+                    log.info("Trip {} is not available. Current status: {}", id, trip.getStatus());
+                    throw new RuntimeException("Trip is not available for acceptance");
                 }
 
-                // Check TTL
-                LocalDateTime now = LocalDateTime.now();
-                LocalDateTime expirationTime = trip.getRequestedAt().plusSeconds(15);
-
-                System.out.println("[VN] now=" + now + ", expireAt=" + expirationTime);
-
-                if (now.isAfter(expirationTime)) {
-                    System.out.println("[VN] Trip expired. now=" + now + ", expireAt=" + expirationTime);
-                    throw new TripExpiredException("Trip notification has expired. This trip is no longer available for acceptance.");
-                }
+                log.info("Trip {} expired. now={}, expireAt={}", id, now, trip.getRequestedAt().plusSeconds(acceptWindowSeconds));
+                throw new RuntimeException("Trip notification has expired. This trip is no longer available for acceptance.");
+            }
 
-                trip.setDriverId(driverId);
-                trip.setStatus(TripStatus.ACCEPTED);
+            log.info("Trip {} accepted by driver {}", id, driverId);
 
-                System.out.println("[VN] Trip accepted by driver " + driverId);
+            return publishStatusChanged(toTripResponse(findView(id)));
+        }));
+    }
 
-                return getTripResponse(trip);
-            });
+    /**
+     * One page of trips from every shard, newest first. Each shard is queried in parallel for at most
+     * {@code limit} rows after the cursor (keyset on {@code (requested_at, id)}), and the sorted results are
+     * merged; memory and latency depend on the page size, not on how many trips are stored.
+     */
+    @Override
+    public TripPageResponse getTrips(String cursor, int limit) {
+        int pageSize = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        TripResponse after = cursor == null || cursor.isBlank() ? null : decodeCursor(cursor);
+
+        List<CompletableFuture<List<TripResponse>>> futures = new ArrayList<>();
+        for (Shard shard : Shard.values()) {
+            futures.add(CompletableFuture.supplyAsync(
+                    () -> shardRouter.execute(shard, () -> readOnlyTransactionTemplate.execute(status -> {
+                        PageRequest page = PageRequest.of(0, pageSize);
+                        List<TripView> trips = after == null
+                                ? tripRepository.findAllByOrderByRequestedAtDescIdDesc(page)
+                                : tripRepository.findPageBefore(after.getRequestedAt(), after.getId(), page);
+                        return trips.stream().map(this::toTripResponse).toList();
+                    })),
+                    shardQueryExecutor));
         }
-        catch (TripNotFoundException e) {
-            // Only try TH if trip was not found in VN
-            System.out.println("[VN] Trip not found, trying TH database...");
 
-            DbContextHolder.setDbType("TH");
+        List<TripResponse> merged = new ArrayList<>();
+        boolean more = false;
+        for (CompletableFuture<List<TripResponse>> future : futures) {
+            List<TripResponse> shardPage;
             try {
-                return transactionTemplate.execute(status -> {
-
-                    System.out.println("[TH] Checking trip " + id + " for driver " + driverId);
-
-                    Trip trip = tripRepository.findById(id)
-                            .orElseThrow(() -> {
-                                System.out.println("[TH] Trip not found: " + id);
-                                return new RuntimeException("Trip not found with id: " + id);
-                            });
-
-                    System.out.println("[TH] Trip found with status = " + trip.getStatus());
-
-                    if (trip.getStatus() != TripStatus.SEARCHING_DRIVER) {
-                        System.out.println("[TH] Trip NOT available. Current status: " + trip.getStatus());
-                        throw new RuntimeException("Trip is not available for acceptance");
-                    }
-
-                    LocalDateTime now = LocalDateTime.now();
-                    LocalDateTime expirationTime = trip.getRequestedAt().plusSeconds(15);
-
-                    System.out.println("[TH] now=" + now + ", expireAt=" + expirationTime);
-
-                    if (now.isAfter(expirationTime)) {
-                        System.out.println("[TH] Trip expired. now=" + now + ", expireAt=" + expirationTime);
-                        throw new RuntimeException("Trip notification has expired. This trip is no longer available for acceptance.");
-                    }
-
-                    trip.setDriverId(driverId);
-                    trip.setStatus(TripStatus.ACCEPTED);
-
-                    System.out.println("[TH] Trip accepted by driver " + driverId);
-
-                    return getTripResponse(trip);
-                });
-            } finally {
-                DbContextHolder.clearDbType();
+                shardPage = future.join();
+            } catch (CompletionException e) {
+                // A missing shard would make the cursor skip its rows for good, so fail the whole page
+                log.error("Error fetching trips from a shard", e.getCause());
+                throw e.getCause() instanceof RuntimeException cause ? cause : e;
             }
+            more |= shardPage.size() == pageSize;
+            merged.addAll(shardPage);
         }
-        catch (TripExpiredException | TripNotAvailableException e) {
-            // Trip was found in VN but is expired or not available - don't try TH
-            System.out.println("[VN] Trip found but not acceptable: " + e.getMessage());
-            DbContextHolder.clearDbType();
-            throw new RuntimeException(e.getMessage());
-        }
-        catch (Exception e) {
-            // Unexpected error
-            DbContextHolder.clearDbType();
-            throw e;
+
+        merged.sort(NEWEST_FIRST);
+        if (merged.size() > pageSize) {
+            merged = new ArrayList<>(merged.subList(0, pageSize));
+            more = true;
         }
+
+        return TripPageResponse.builder()
+                .items(merged)
+                .nextCursor(more && !merged.isEmpty() ? encodeCursor(merged.get(merged.size() - 1)) : null)
+                .build();
     }
 
-    // Create these custom exception classes
-    static class TripNotFoundException extends RuntimeException {
-        public TripNotFoundException(String message) {
-            super(message);
-        }
+    private static int compareUnsigned(UUID a, UUID b) {
+        int msb = Long.compareUnsigned(a.getMostSignificantBits(), b.getMostSignificantBits());
+        return msb != 0 ? msb : Long.compareUnsigned(a.getLeastSignificantBits(), b.getLeastSignificantBits());
     }
 
-    static class TripExpiredException extends RuntimeException {
-        public TripExpiredException(String message) {
-            super(message);
-        }
+    private static String encodeCursor(TripResponse last) {
+        String raw = last.getRequestedAt() + "|" + last.getId();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
     }
 
-    static class TripNotAvailableException extends RuntimeException {
-        public TripNotAvailableException(String message) {
-            super(message);
+    private static TripResponse decodeCursor(String cursor) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separator = raw.indexOf('|');
+            return TripResponse.builder()
+                    .requestedAt(LocalDateTime.parse(raw.substring(0, separator)))
+                    .id(UUID.fromString(raw.substring(separator + 1)))
+                    .build();
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor);
         }
     }
 
+    // Một transaction trên đúng shard của trip, không cần thử VN rồi TH
+    private <T> T inTripShard(UUID id, TransactionCallback<T> action) {
+        return inTripShard(id, transactionTemplate, action);
+    }
 
-    @Override
-    public List<TripResponse> getAllTrips() {
-        List<Trip> allTrips = new ArrayList<>();
+    private <T> T inTripShard(UUID id, TransactionTemplate template, TransactionCallback<T> action) {
+        return shardRouter.execute(shardRouter.resolve(id), () -> template.execute(action));
+    }
 
-        // Get from VN
-        DbContextHolder.setDbType("VN");
-        try {
-            List<Trip> vnTrips = tripRepository.findAll();
-            allTrips.addAll(vnTrips);
-        } catch (Exception e) {
-            log.error("Error fetching trips from VN shard", e);
-        }
+    // Gọi sau khi transaction đã commit, để cache không bao giờ chứa thay đổi bị rollback
+    private TripResponse writeThrough(TripResponse trip) {
+        tripCache.put(trip);
+        return trip;
+    }
 
-        // Get from TH
-        DbContextHolder.setDbType("TH");
-        try {
-            List<Trip> thTrips = tripRepository.findAll();
-            allTrips.addAll(thTrips);
-        } catch (Exception e) {
-            log.error("Error fetching trips from TH shard", e);
-        } finally {
-            DbContextHolder.clearDbType();
-        }
+    // Sau một UPDATE có điều kiện: đọc lại trip (hoặc lý do thất bại) bằng projection, không load entity
+    private TripView findView(UUID id) {
+        return tripRepository.findViewById(id)
+                .orElseThrow(() -> new RuntimeException("Trip not found with id: " + id));
+    }
 
-        return allTrips.stream().map(this::getTripResponse).toList();
+    // Ghi event vào outbox trong cùng transaction, để driver-service cập nhật trạng thái tài xế
+    private TripResponse publishStatusChanged(TripResponse trip) {
+        tripNotificationService.publishStatusChanged(TripStatusEvent.builder()
+                .tripId(trip.getId())
+                .driverId(trip.getDriverId())
+                .status(trip.getStatus())
+                .occurredAt(System.currentTimeMillis())
+                .version(trip.getVersion() != null ? trip.getVersion() : 0)
+                .build());
+        return trip;
     }
 
-    private TripResponse getTripResponse(Trip trip) {
-        trip = tripRepository.save(trip);
+    // The trip just saved by createTrip; transitions go through conditional UPDATEs and read back a TripView
+    private TripResponse toTripResponse(Trip trip) {
+        return TripResponse.builder()
+                .id(trip.getId())
+                .passengerId(trip.getPassengerId())
+                .driverId(trip.getDriverId())
+                .status(trip.getStatus().name())
+                .pickupLatitude(trip.getPickupLatitude())
+                .pickupLongitude(trip.getPickupLongitude())
+                .destinationLatitude(trip.getDestinationLatitude())
+                .destinationLongitude(trip.getDestinationLongitude())
+                .fare(trip.getFare())
+                .requestedAt(trip.getRequestedAt())
+                .startedAt(trip.getStartedAt())
+                .completedAt(trip.getCompletedAt())
+                .cancelledAt(trip.getCancelledAt())
+                .version(trip.getVersion())
+                .build();
+    }
 
+    // Read path: projections, never managed entities
+    private TripResponse toTripResponse(TripView trip) {
         return TripResponse.builder()
                 .id(trip.getId())
                 .passengerId(trip.getPassengerId())
@@ -498,6 +476,7 @@ public class TripServiceImpl implements ITripService {
                 .startedAt(trip.getStartedAt())
                 .completedAt(trip.getCompletedAt())
                 .cancelledAt(trip.getCancelledAt())
+                .version(trip.getVersion())
                 .build();
     }
 }
@@ -0,0 +1,97 @@
+package com.example.trip_service.service.impl;
+
+import com.example.trip_service.dto.response.TripResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Supplier;
+
+/**
+ * Long-poll requests waiting for a trip to change, on this pod. Woken by the
+ * {@code tripId|version} messages every pod receives after a trip transition.
+ */
+@Component
+@Slf4j
+public class TripWatchRegistry {
+
+    private final Map<UUID, List<Waiter>> waiters = new ConcurrentHashMap<>();
+    private final Executor tripWatchExecutor;
+
+    public TripWatchRegistry(@Qualifier("tripWatchExecutor") Executor tripWatchExecutor) {
+        this.tripWatchExecutor = tripWatchExecutor;
+    }
+
+    /** Parks {@code result} until the trip moves past {@code knownVersion}; answers 304 on timeout. */
+    public void register(UUID tripId, long knownVersion, DeferredResult<ResponseEntity<TripResponse>> result,
+                         Supplier<TripResponse> loader) {
+        Waiter waiter = new Waiter(knownVersion, result, loader);
+        waiters.computeIfAbsent(tripId, id -> new CopyOnWriteArrayList<>()).add(waiter);
+
+        result.onTimeout(() -> result.setResult(notModified(knownVersion)));
+        result.onCompletion(() -> remove(tripId, waiter));
+    }
+
+    /** Called on the pub/sub listener thread; the reload and the answers happen on tripWatchExecutor. */
+    public void onChanged(UUID tripId, long version) {
+        List<Waiter> watching = waiters.get(tripId);
+        if (watching == null) {
+            return;
+        }
+
+        try {
+            tripWatchExecutor.execute(() -> notifyWaiters(tripId, version, watching));
+        } catch (RejectedExecutionException e) {
+            log.warn("Dropped change of trip {} for watchers, executor is full", tripId);
+        }
+    }
+
+    private void notifyWaiters(UUID tripId, long version, List<Waiter> watching) {
+        TripResponse trip = null;
+        for (Waiter waiter : watching) {
+            if (waiter.knownVersion() >= version || waiter.result().isSetOrExpired()) {
+                continue;
+            }
+            try {
+                // One read per change, shared by every waiter of the trip
+                if (trip == null) {
+                    trip = waiter.loader().get();
+                }
+                waiter.result().setResult(changed(trip));
+            } catch (Exception e) {
+                log.warn("Failed to load trip {} for watchers: {}", tripId, e.getMessage());
+                waiter.result().setErrorResult(e);
+            }
+        }
+    }
+
+    static ResponseEntity<TripResponse> changed(TripResponse trip) {
+        return ResponseEntity.ok().eTag(String.valueOf(trip.getVersion())).body(trip);
+    }
+
+    static ResponseEntity<TripResponse> notModified(long version) {
+        return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(String.valueOf(version)).build();
+    }
+
+    private void remove(UUID tripId, Waiter waiter) {
+        waiters.computeIfPresent(tripId, (id, list) -> {
+            list.remove(waiter);
+            return list.isEmpty() ? null : list;
+        });
+    }
+
+    private record Waiter(long knownVersion,
+                          DeferredResult<ResponseEntity<TripResponse>> result,
+                          Supplier<TripResponse> loader) {
+    }
+}
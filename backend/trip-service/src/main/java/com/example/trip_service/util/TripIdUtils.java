@@ -0,0 +1,47 @@
+package com.example.trip_service.util;
+
+import com.example.trip_service.enums.Shard;
+
+import java.security.SecureRandom;
+import java.util.UUID;
+
+/**
+ * Trip ids are UUIDv7 (48-bit Unix millis, then random bits) with the shard code in the
+ * 4 bits right after the version nibble. Ids sort by creation time and name their shard,
+ * so a lookup needs no probing. Ids created before this scheme are random UUIDv4 and
+ * carry no shard.
+ */
+public final class TripIdUtils {
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private static final int VERSION_7 = 7;
+
+    private TripIdUtils() {
+        throw new UnsupportedOperationException("Utility class");
+    }
+
+    public static UUID newTripId(Shard shard) {
+        return newTripId(shard, System.currentTimeMillis());
+    }
+
+    static UUID newTripId(Shard shard, long epochMillis) {
+        // | unix_ts_ms (48) | ver=7 (4) | shard (4) | rand (8) |
+        long msb = (epochMillis & 0xFFFF_FFFF_FFFFL) << 16
+                | (long) VERSION_7 << 12
+                | (long) (shard.getCode() & 0xF) << 8
+                | RANDOM.nextInt(0x100);
+
+        // | var=10 (2) | rand (62) |
+        long lsb = (RANDOM.nextLong() & 0x3FFF_FFFF_FFFF_FFFFL) | 0x8000_0000_0000_0000L;
+        return new UUID(msb, lsb);
+    }
+
+    /** The shard encoded in the id, or {@code null} for an id that does not carry one. */
+    public static Shard shardOf(UUID tripId) {
+        if (tripId.version() != VERSION_7) {
+            return null;
+        }
+        return Shard.fromCode((int) (tripId.getMostSignificantBits() >>> 8) & 0xF);
+    }
+}
@@ -0,0 +1,13 @@
+-- Caches a trip unless a newer version of it is already cached.
+-- KEYS[1] = trip:cache:{tripId}
+-- ARGV[1] = trip JSON, ARGV[2] = its version, ARGV[3] = TTL in milliseconds
+local current = redis.call('GET', KEYS[1])
+if current then
+    local version = cjson.decode(current)['version']
+    if type(version) == 'number' and version > tonumber(ARGV[2]) then
+        return 0
+    end
+end
+
+redis.call('SET', KEYS[1], ARGV[1], 'PX', ARGV[3])
+return 1
@@ -14,9 +14,13 @@ CREATE TABLE trip
     requested_at TIMESTAMP WITHOUT TIME ZONE NOT NULL,
     started_at TIMESTAMP WITHOUT TIME ZONE,
     completed_at TIMESTAMP WITHOUT TIME ZONE,
-    canceled_at TIMESTAMP WITHOUT TIME ZONE
+    canceled_at TIMESTAMP WITHOUT TIME ZONE,
+    version BIGINT DEFAULT 0 NOT NULL
 );
 
+-- Keyset pagination of GET /api/trips, newest first
+CREATE INDEX idx_trip_requested_at_id ON trip (requested_at, id);
+
 CREATE TABLE rating
 (
     id UUID PRIMARY KEY,
@@ -25,4 +29,15 @@ CREATE TABLE rating
     comment VARCHAR(500),
     created_at TIMESTAMP WITHOUT TIME ZONE NOT NULL,
     CONSTRAINT fk_trip FOREIGN KEY (trip_id) REFERENCES trip(id) ON DELETE CASCADE
-);
\ No newline at end of file
+);
+
+-- Outbox of RabbitMQ messages, one per shard (VN and TH)
+CREATE TABLE trip_outbox
+(
+    id BIGSERIAL PRIMARY KEY,
+    exchange VARCHAR(255) NOT NULL,
+    routing_key VARCHAR(255) NOT NULL,
+    payload_type VARCHAR(255) NOT NULL,
+    payload TEXT NOT NULL,
+    created_at TIMESTAMP WITHOUT TIME ZONE NOT NULL
+);